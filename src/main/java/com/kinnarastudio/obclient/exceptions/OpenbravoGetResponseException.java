@@ -7,9 +7,25 @@ public class OpenbravoGetResponseException extends Exception {
     private final String title;
 
     public OpenbravoGetResponseException(int status, String message, String messageType, String title) {
+        super(message);
         this.status = status;
         this.message = message;
         this.messageType = messageType;
         this.title = title;
     }
+
+    /**
+     * @return status of the Openbravo response, e.g. -1 when the request failed
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    public String getMessageType() {
+        return messageType;
+    }
+
+    public String getTitle() {
+        return title;
+    }
 }
@@ -1,20 +1,63 @@
 package com.kinnarastudio.obclient.exceptions;
 
+import java.io.IOException;
+
 /**
  * @author aristo
  *
  * Rest Client Exception
  */
 public class RestClientException extends Exception {
+    /**
+     * HTTP status of the response, 0 when the request did not get a response status
+     */
+    private final int statusCode;
+
     public RestClientException(String message, Throwable cause) {
         super(message, cause);
+        this.statusCode = 0;
     }
 
     public RestClientException(Throwable cause) {
         super(cause);
+        this.statusCode = 0;
     }
 
     public RestClientException(String message) {
         super(message);
+        this.statusCode = 0;
+    }
+
+    public RestClientException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return HTTP status of the response, 0 when not caused by a response status
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return true if the server answered with a 4xx status, the request itself is wrong and repeating it does not help
+     */
+    public boolean isClientError() {
+        return statusCode >= 400 && statusCode < 500;
+    }
+
+    /**
+     * @return true if the server answered with a 5xx status
+     */
+    public boolean isServerError() {
+        return statusCode >= 500;
+    }
+
+    /**
+     * @return true if the request failed on the connection, before or while reading the response
+     */
+    public boolean isTransportError() {
+        return getCause() instanceof IOException;
     }
 }
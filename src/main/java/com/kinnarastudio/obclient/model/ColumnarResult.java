@@ -0,0 +1,770 @@
+package com.kinnarastudio.obclient.model;
+
+import org.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Query result stored column by column. All rows share one column schema, numbers are kept in
+ * primitive arrays, strings with few distinct values are dictionary encoded and nulls are tracked in a bitmap, so a row
+ * costs a few bytes per column instead of a {@link HashMap} with its entries and boxed values.
+ * <p>
+ * {@link Row} is a view over the columns, nothing is copied when reading a row.
+ * <p>
+ * Type of each column is taken from its first non-null value. Integral numbers are stored as
+ * <code>long</code>, decimals as <code>double</code> as long as the conversion is exact; a column
+ * holding values that do not fit its type falls back to plain objects.
+ */
+public class ColumnarResult implements Iterable<ColumnarResult.Row> {
+    private final String[] columnNames;
+    private final Map<String, Integer> columnIndex;
+    private final Column[] columns;
+    private final int size;
+
+    private ColumnarResult(String[] columnNames, Column[] columns, int size) {
+        this.columnNames = columnNames;
+        this.columns = columns;
+        this.size = size;
+
+        final Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < columnNames.length; i++) {
+            index.put(columnNames[i], i);
+        }
+        this.columnIndex = Collections.unmodifiableMap(index);
+    }
+
+    public static Builder builder(@Nonnull String... columnNames) {
+        return new Builder(columnNames);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Nonnull
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    /**
+     * @return index of column, -1 if not found
+     */
+    public int getColumnIndex(@Nonnull String columnName) {
+        return columnIndex.getOrDefault(columnName, -1);
+    }
+
+    @Nonnull
+    public ColumnType getColumnType(int column) {
+        return columns[column].getType();
+    }
+
+    public boolean isNull(int row, int column) {
+        checkRow(row);
+        return columns[column].isNull(row);
+    }
+
+    /**
+     * @return value of {@link ColumnType#LONG} column, 0 when null
+     */
+    public long getLong(int row, int column) {
+        checkRow(row);
+        return columns[column].getLong(row);
+    }
+
+    /**
+     * @return value of {@link ColumnType#LONG} or {@link ColumnType#DOUBLE} column, 0 when null
+     */
+    public double getDouble(int row, int column) {
+        checkRow(row);
+        return columns[column].getDouble(row);
+    }
+
+    /**
+     * @return value of {@link ColumnType#BOOLEAN} column, false when null
+     */
+    public boolean getBoolean(int row, int column) {
+        checkRow(row);
+        return columns[column].getBoolean(row);
+    }
+
+    @Nullable
+    public String getString(int row, int column) {
+        checkRow(row);
+        final Object value = columns[column].get(row);
+        return value == null ? null : String.valueOf(value);
+    }
+
+    /**
+     * @return boxed value, null when null
+     */
+    @Nullable
+    public Object get(int row, int column) {
+        checkRow(row);
+        return columns[column].get(row);
+    }
+
+    @Nonnull
+    public Row getRow(int row) {
+        checkRow(row);
+        return new Row(row);
+    }
+
+    @Nonnull
+    @Override
+    public Iterator<Row> iterator() {
+        return new Iterator<>() {
+            private int row = 0;
+
+            @Override
+            public boolean hasNext() {
+                return row < size;
+            }
+
+            @Override
+            public Row next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return new Row(row++);
+            }
+        };
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row [" + row + "] size [" + size + "]");
+        }
+    }
+
+    public enum ColumnType {
+        /**
+         * Column without any non-null value
+         */
+        NULL,
+        LONG,
+        DOUBLE,
+        BOOLEAN,
+        STRING,
+        OBJECT
+    }
+
+    /**
+     * View of a single row
+     */
+    public class Row {
+        private final int row;
+
+        private Row(int row) {
+            this.row = row;
+        }
+
+        public int getIndex() {
+            return row;
+        }
+
+        public boolean isNull(@Nonnull String columnName) {
+            return ColumnarResult.this.isNull(row, column(columnName));
+        }
+
+        public long getLong(@Nonnull String columnName) {
+            return ColumnarResult.this.getLong(row, column(columnName));
+        }
+
+        public double getDouble(@Nonnull String columnName) {
+            return ColumnarResult.this.getDouble(row, column(columnName));
+        }
+
+        public boolean getBoolean(@Nonnull String columnName) {
+            return ColumnarResult.this.getBoolean(row, column(columnName));
+        }
+
+        @Nullable
+        public String getString(@Nonnull String columnName) {
+            return ColumnarResult.this.getString(row, column(columnName));
+        }
+
+        @Nullable
+        public Object get(@Nonnull String columnName) {
+            final int column = getColumnIndex(columnName);
+            return column < 0 ? null : ColumnarResult.this.get(row, column);
+        }
+
+        /**
+         * @return read-only {@link Map} view of this row, values are boxed on access
+         */
+        @Nonnull
+        public Map<String, Object> asMap() {
+            return new AbstractMap<>() {
+                @Override
+                public Object get(Object key) {
+                    return key instanceof String ? Row.this.get((String) key) : null;
+                }
+
+                @Override
+                public boolean containsKey(Object key) {
+                    return columnIndex.containsKey(key);
+                }
+
+                @Nonnull
+                @Override
+                public Set<Entry<String, Object>> entrySet() {
+                    return new AbstractSet<>() {
+                        @Override
+                        public Iterator<Entry<String, Object>> iterator() {
+                            return new Iterator<>() {
+                                private int column = 0;
+
+                                @Override
+                                public boolean hasNext() {
+                                    return column < columnNames.length;
+                                }
+
+                                @Override
+                                public Entry<String, Object> next() {
+                                    if (!hasNext()) throw new NoSuchElementException();
+                                    final int c = column++;
+                                    return new SimpleImmutableEntry<>(columnNames[c], ColumnarResult.this.get(row, c));
+                                }
+                            };
+                        }
+
+                        @Override
+                        public int size() {
+                            return columnNames.length;
+                        }
+                    };
+                }
+            };
+        }
+
+        private int column(String columnName) {
+            final int column = getColumnIndex(columnName);
+            if (column < 0) {
+                throw new IllegalArgumentException("Column [" + columnName + "] not found");
+            }
+            return column;
+        }
+
+        @Override
+        public String toString() {
+            return asMap().toString();
+        }
+    }
+
+    /**
+     * Collects rows into columns. Columns not declared up front are added as they are found,
+     * earlier rows get null for them.
+     */
+    public static class Builder {
+        private final List<String> columnNames = new ArrayList<>();
+        private final Map<String, Integer> columnIndex = new HashMap<>();
+        private final List<Column> columns = new ArrayList<>();
+        private int size = 0;
+        private boolean built = false;
+
+        private Builder(String[] columnNames) {
+            for (String columnName : columnNames) {
+                addColumn(columnName);
+            }
+        }
+
+        public Builder add(@Nonnull JSONObject json) {
+            checkNotBuilt();
+            for (String key : json.keySet()) {
+                if (!columnIndex.containsKey(key)) addColumn(key);
+            }
+
+            for (int i = 0; i < columns.size(); i++) {
+                append(i, json.opt(columnNames.get(i)));
+            }
+
+            size++;
+            return this;
+        }
+
+        public Builder add(@Nonnull Map<String, Object> row) {
+            checkNotBuilt();
+            for (String key : row.keySet()) {
+                if (!columnIndex.containsKey(key)) addColumn(key);
+            }
+
+            for (int i = 0; i < columns.size(); i++) {
+                append(i, row.get(columnNames.get(i)));
+            }
+
+            size++;
+            return this;
+        }
+
+        public ColumnarResult build() {
+            checkNotBuilt();
+            built = true;
+
+            final Column[] compacted = columns.stream()
+                    .map(Column::compact)
+                    .toArray(Column[]::new);
+            return new ColumnarResult(columnNames.toArray(new String[0]), compacted, size);
+        }
+
+        private void checkNotBuilt() {
+            if (built) throw new IllegalStateException("Result has already been built");
+        }
+
+        private void addColumn(String columnName) {
+            final Column column = new NullColumn();
+            for (int i = 0; i < size; i++) {
+                column.appendNull();
+            }
+
+            columnIndex.put(columnName, columns.size());
+            columnNames.add(columnName);
+            columns.add(column);
+        }
+
+        private void append(int index, @Nullable Object value) {
+            Column column = columns.get(index);
+            if (value == null || JSONObject.NULL.equals(value)) {
+                column.appendNull();
+                return;
+            }
+
+            if (!column.accepts(value)) {
+                column = column.convertFor(value);
+                columns.set(index, column);
+            }
+
+            column.append(value);
+            columns.set(index, column.adapt());
+        }
+    }
+
+    private abstract static class Column {
+        protected final BitSet nulls = new BitSet();
+        protected int size = 0;
+
+        abstract ColumnType getType();
+
+        abstract boolean accepts(Object value);
+
+        /**
+         * Append non-null value accepted by this column
+         */
+        abstract void append(Object value);
+
+        abstract Object getValue(int row);
+
+        abstract void ensureCapacity(int capacity);
+
+        void appendNull() {
+            ensureCapacity(size + 1);
+            nulls.set(size++);
+        }
+
+        boolean isNull(int row) {
+            return nulls.get(row);
+        }
+
+        Object get(int row) {
+            return isNull(row) ? null : getValue(row);
+        }
+
+        long getLong(int row) {
+            throw new IllegalStateException("Column type [" + getType() + "] is not " + ColumnType.LONG);
+        }
+
+        double getDouble(int row) {
+            throw new IllegalStateException("Column type [" + getType() + "] is not " + ColumnType.DOUBLE);
+        }
+
+        boolean getBoolean(int row) {
+            throw new IllegalStateException("Column type [" + getType() + "] is not " + ColumnType.BOOLEAN);
+        }
+
+        /**
+         * @return column able to store current values and the new value
+         */
+        Column convertFor(Object value) {
+            final Column column = ObjectColumn.class.equals(getClass()) ? this : new ObjectColumn();
+            return copyTo(column);
+        }
+
+        Column compact() {
+            return this;
+        }
+
+        /**
+         * @return column to use from now on, after a value has been appended
+         */
+        Column adapt() {
+            return this;
+        }
+
+        protected Column copyTo(Column column) {
+            if (column == this) return this;
+
+            column.ensureCapacity(size);
+            for (int i = 0; i < size; i++) {
+                if (isNull(i)) column.appendNull();
+                else column.append(getValue(i));
+            }
+            return column;
+        }
+
+        protected static int grow(int length, int capacity) {
+            return Math.max(capacity, Math.max(16, length + (length >> 1)));
+        }
+    }
+
+    private static class NullColumn extends Column {
+        @Override
+        ColumnType getType() {
+            return ColumnType.NULL;
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return false;
+        }
+
+        @Override
+        void append(Object value) {
+            throw new IllegalStateException("Null column only accepts null");
+        }
+
+        @Override
+        Object getValue(int row) {
+            return null;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+        }
+
+        @Override
+        Column convertFor(Object value) {
+            final Column column;
+            if (LongColumn.isLong(value)) {
+                column = new LongColumn();
+            } else if (DoubleColumn.isDouble(value)) {
+                column = new DoubleColumn();
+            } else if (value instanceof Boolean) {
+                column = new BooleanColumn();
+            } else if (value instanceof String) {
+                column = new StringColumn();
+            } else {
+                column = new ObjectColumn();
+            }
+            return copyTo(column);
+        }
+    }
+
+    private static class LongColumn extends Column {
+        private long[] values = new long[0];
+
+        static boolean isLong(Object value) {
+            return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+        }
+
+        @Override
+        ColumnType getType() {
+            return ColumnType.LONG;
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return isLong(value);
+        }
+
+        @Override
+        void append(Object value) {
+            ensureCapacity(size + 1);
+            values[size++] = ((Number) value).longValue();
+        }
+
+        @Override
+        Object getValue(int row) {
+            return values[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            if (capacity > values.length) values = Arrays.copyOf(values, grow(values.length, capacity));
+        }
+
+        /**
+         * Values already stored are only converted to double when all of them are exact as double
+         */
+        @Override
+        Column convertFor(Object value) {
+            if (DoubleColumn.isDouble(value)) {
+                boolean exact = true;
+                for (int i = 0; i < size && exact; i++) {
+                    exact = isNull(i) || DoubleColumn.isExact(values[i]);
+                }
+
+                if (exact) return copyTo(new DoubleColumn());
+            }
+            return super.convertFor(value);
+        }
+
+        @Override
+        Column compact() {
+            values = Arrays.copyOf(values, size);
+            return this;
+        }
+    }
+
+    private static class DoubleColumn extends Column {
+        /**
+         * Integral values up to 2^53 are exact as double
+         */
+        private final static long MAX_EXACT_LONG = 1L << 53;
+
+        private double[] values = new double[0];
+
+        static boolean isExact(long value) {
+            return value >= -MAX_EXACT_LONG && value <= MAX_EXACT_LONG;
+        }
+
+        /**
+         * @return true if value can be stored as double without losing precision
+         */
+        static boolean isDouble(Object value) {
+            if (value instanceof Double || value instanceof Float) {
+                return true;
+            } else if (LongColumn.isLong(value)) {
+                return isExact(((Number) value).longValue());
+            } else if (value instanceof BigDecimal) {
+                final BigDecimal decimal = (BigDecimal) value;
+                final double d = decimal.doubleValue();
+                return !Double.isInfinite(d) && BigDecimal.valueOf(d).compareTo(decimal) == 0;
+            }
+            return false;
+        }
+
+        @Override
+        ColumnType getType() {
+            return ColumnType.DOUBLE;
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return isDouble(value);
+        }
+
+        @Override
+        void append(Object value) {
+            ensureCapacity(size + 1);
+            values[size++] = ((Number) value).doubleValue();
+        }
+
+        @Override
+        Object getValue(int row) {
+            return values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            if (capacity > values.length) values = Arrays.copyOf(values, grow(values.length, capacity));
+        }
+
+        @Override
+        Column compact() {
+            values = Arrays.copyOf(values, size);
+            return this;
+        }
+    }
+
+    private static class BooleanColumn extends Column {
+        private final BitSet values = new BitSet();
+
+        @Override
+        ColumnType getType() {
+            return ColumnType.BOOLEAN;
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof Boolean;
+        }
+
+        @Override
+        void append(Object value) {
+            values.set(size++, (Boolean) value);
+        }
+
+        @Override
+        Object getValue(int row) {
+            return values.get(row);
+        }
+
+        @Override
+        boolean getBoolean(int row) {
+            return values.get(row);
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+        }
+    }
+
+    /**
+     * Dictionary encoded strings, each distinct value is kept once and rows refer to it by code.
+     * Once most values turn out to be distinct, such as ids, the dictionary costs more than it
+     * saves and the column becomes a {@link PlainStringColumn}.
+     */
+    private static class StringColumn extends Column {
+        /**
+         * Rows to see before judging cardinality
+         */
+        private final static int MIN_SAMPLE = 256;
+
+        private final List<String> dictionary = new ArrayList<>();
+        private Map<String, Integer> codes = new HashMap<>();
+        private int[] values = new int[0];
+
+        @Override
+        ColumnType getType() {
+            return ColumnType.STRING;
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof String;
+        }
+
+        @Override
+        void append(Object value) {
+            ensureCapacity(size + 1);
+            values[size++] = codes.computeIfAbsent((String) value, s -> {
+                dictionary.add(s);
+                return dictionary.size() - 1;
+            });
+        }
+
+        @Override
+        Object getValue(int row) {
+            return dictionary.get(values[row]);
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            if (capacity > values.length) values = Arrays.copyOf(values, grow(values.length, capacity));
+        }
+
+        @Override
+        Column compact() {
+            values = Arrays.copyOf(values, size);
+            codes = null;
+            return this;
+        }
+
+        @Override
+        Column adapt() {
+            return size >= MIN_SAMPLE && dictionary.size() > size / 2 ? copyTo(new PlainStringColumn()) : this;
+        }
+    }
+
+    private static class PlainStringColumn extends Column {
+        private String[] values = new String[0];
+
+        @Override
+        ColumnType getType() {
+            return ColumnType.STRING;
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof String;
+        }
+
+        @Override
+        void append(Object value) {
+            ensureCapacity(size + 1);
+            values[size++] = (String) value;
+        }
+
+        @Override
+        Object getValue(int row) {
+            return values[row];
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            if (capacity > values.length) values = Arrays.copyOf(values, grow(values.length, capacity));
+        }
+
+        @Override
+        Column compact() {
+            values = Arrays.copyOf(values, size);
+            return this;
+        }
+    }
+
+    private static class ObjectColumn extends Column {
+        private Object[] values = new Object[0];
+
+        @Override
+        ColumnType getType() {
+            return ColumnType.OBJECT;
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return true;
+        }
+
+        @Override
+        void append(Object value) {
+            ensureCapacity(size + 1);
+            values[size++] = value;
+        }
+
+        @Override
+        Object getValue(int row) {
+            return values[row];
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            if (capacity > values.length) values = Arrays.copyOf(values, grow(values.length, capacity));
+        }
+
+        @Override
+        Column compact() {
+            values = Arrays.copyOf(values, size);
+            return this;
+        }
+    }
+}
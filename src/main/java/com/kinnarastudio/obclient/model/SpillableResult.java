@@ -0,0 +1,240 @@
+package com.kinnarastudio.obclient.model;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.logging.Logger;
+
+/**
+ * Rows of a query result kept in heap up to a budget, further rows are written to a temporary file
+ * and read back through a memory mapping when accessed. The file is deleted on {@link #close()}.
+ * <p>
+ * Heap usage of a row is an estimate based on its keys and values. Rows read back from the file are
+ * new {@link Map} instances, values keep the types produced by {@link JSONObject}, with
+ * {@link JSONObject#NULL} for nulls. Adding rows is not thread-safe, once added rows may be read by
+ * several threads at once.
+ */
+public class SpillableResult extends AbstractList<Map<String, Object>> implements RandomAccess, Closeable {
+    public final static Logger logger = Logger.getLogger(SpillableResult.class.getName());
+
+    public final static long DEFAULT_HEAP_BUDGET = 64L * 1024 * 1024;
+
+    private final static long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final long heapBudget;
+    private final List<Map<String, Object>> inMemory = new ArrayList<>();
+    private long heapUsage = 0;
+
+    @Nullable
+    private Path spillFile = null;
+    @Nullable
+    private FileChannel channel = null;
+
+    /**
+     * Offset of each spilled row in the file, followed by the end of the file
+     */
+    private long[] offsets = new long[]{0};
+    private int spilled = 0;
+
+    /**
+     * Mapping of the file last read, replaced as a whole so concurrent reads never mix two windows
+     */
+    @Nullable
+    private volatile Window window = null;
+
+    public SpillableResult() {
+        this(DEFAULT_HEAP_BUDGET);
+    }
+
+    /**
+     * @param heapBudget estimated bytes of rows to keep in heap before spilling to disk
+     */
+    public SpillableResult(long heapBudget) {
+        this.heapBudget = heapBudget;
+    }
+
+    @Override
+    public boolean add(@Nonnull Map<String, Object> row) {
+        final long rowSize = estimateSize(row);
+        if (channel == null && heapUsage + rowSize <= heapBudget) {
+            inMemory.add(row);
+            heapUsage += rowSize;
+        } else {
+            try {
+                spill(row);
+            } catch (IOException | JSONException e) {
+                throw new UncheckedIOException(e instanceof IOException ? (IOException) e : new IOException(e));
+            }
+        }
+
+        modCount++;
+        return true;
+    }
+
+    public void addAll(@Nonnull Map<String, Object>[] rows) {
+        for (Map<String, Object> row : rows) {
+            add(row);
+        }
+    }
+
+    @Override
+    public Map<String, Object> get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index [" + index + "] size [" + size() + "]");
+        }
+
+        if (index < inMemory.size()) {
+            return inMemory.get(index);
+        }
+
+        try {
+            return read(index - inMemory.size());
+        } catch (IOException | JSONException e) {
+            throw new UncheckedIOException(e instanceof IOException ? (IOException) e : new IOException(e));
+        }
+    }
+
+    @Override
+    public int size() {
+        return inMemory.size() + spilled;
+    }
+
+    /**
+     * @return true if part of the rows are on disk
+     */
+    public boolean isSpilled() {
+        return spilled > 0;
+    }
+
+    public int getSpilledCount() {
+        return spilled;
+    }
+
+    /**
+     * Delete the spill file, rows on disk are no longer accessible
+     */
+    @Override
+    public void close() throws IOException {
+        window = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+
+        if (spillFile != null) {
+            Files.deleteIfExists(spillFile);
+            spillFile = null;
+        }
+    }
+
+    private void spill(Map<String, Object> row) throws IOException, JSONException {
+        if (channel == null) {
+            spillFile = Files.createTempFile("openbravo-result-", ".spill");
+            // deleted when the channel is closed, deleteOnExit would keep every path until the JVM stops
+            channel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+            logger.info("spill : heap budget [" + heapBudget + "] reached after [" + inMemory.size() + "] rows, spilling to [" + spillFile + "]");
+        }
+
+        final JSONObject json = new JSONObject();
+        for (Map.Entry<String, Object> entry : row.entrySet()) {
+            json.put(entry.getKey(), entry.getValue() == null ? JSONObject.NULL : entry.getValue());
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(json.toString().getBytes(StandardCharsets.UTF_8));
+        long position = offsets[spilled];
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+
+        if (spilled + 1 >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[++spilled] = position;
+    }
+
+    private Map<String, Object> read(int spilledIndex) throws IOException, JSONException {
+        if (channel == null) {
+            throw new IOException("Result has been closed");
+        }
+
+        final long start = offsets[spilledIndex];
+        final int length = (int) (offsets[spilledIndex + 1] - start);
+
+        Window current = window;
+        if (current == null || start < current.start || start + length > current.end) {
+            final long end = offsets[spilled];
+            final long size = Math.min(end - start, Math.max(WINDOW_SIZE, length));
+            current = new Window(channel.map(FileChannel.MapMode.READ_ONLY, start, size), start);
+            window = current;
+        }
+
+        final byte[] bytes = new byte[length];
+        final ByteBuffer view = current.buffer.duplicate();
+        view.position((int) (start - current.start));
+        view.get(bytes);
+
+        final JSONObject json = new JSONObject(new String(bytes, StandardCharsets.UTF_8));
+        final Map<String, Object> row = new HashMap<>();
+        for (String key : json.keySet()) {
+            row.put(key, json.get(key));
+        }
+        return row;
+    }
+
+    /**
+     * Rough heap size of a row held as {@link HashMap}
+     */
+    protected long estimateSize(@Nonnull Map<String, Object> row) {
+        long size = 64;
+        for (Map.Entry<String, Object> entry : row.entrySet()) {
+            size += 48 + stringSize(entry.getKey());
+
+            final Object value = entry.getValue();
+            if (value == null || JSONObject.NULL.equals(value)) {
+                continue;
+            } else if (value instanceof String) {
+                size += stringSize((String) value);
+            } else if (value instanceof Number || value instanceof Boolean) {
+                size += 24;
+            } else {
+                size += stringSize(String.valueOf(value));
+            }
+        }
+        return size;
+    }
+
+    private static long stringSize(String s) {
+        return 40L + s.length();
+    }
+
+    private static class Window {
+        private final MappedByteBuffer buffer;
+        private final long start;
+        private final long end;
+
+        private Window(MappedByteBuffer buffer, long start) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = start + buffer.capacity();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.kinnarastudio.obclient.service;
+
+import com.kinnarastudio.obclient.exceptions.OpenbravoClientException;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * Runs a blocking call per item on {@link TaskExecutors}, with the number of calls in flight bounded
+ * by a semaphore rather than by the size of a thread pool. Items are submitted in order and results are
+ * returned in the same order. The first failure stops submitting further items, cancels the calls still
+ * running and is rethrown. Each call runs with its own {@link RequestAbort}, cancelling aborts its http
+ * request, interrupting a thread blocked in a socket read would not stop it.
+ */
+final class BulkExecutor {
+    public final static Logger logger = Logger.getLogger(BulkExecutor.class.getName());
+
+    private BulkExecutor() {
+    }
+
+    static <T, R> List<R> invokeAll(@Nonnull String name, @Nonnull List<T> items, int maxConcurrency, @Nonnull Task<T, R> task) throws OpenbravoClientException {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Invalid max concurrency [" + maxConcurrency + "]");
+        }
+
+        logger.fine("invokeAll : [" + items.size() + "] calls of [" + name + "] with max concurrency [" + maxConcurrency + "] virtual threads [" + TaskExecutors.isVirtual() + "]");
+
+        final Semaphore permits = new Semaphore(maxConcurrency);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final ExecutorService executor = TaskExecutors.newTaskExecutor(name);
+        final List<Future<R>> futures = new ArrayList<>(items.size());
+        final List<RequestAbort> requestAborts = new CopyOnWriteArrayList<>();
+        try {
+            for (T item : items) {
+                permits.acquire();
+                if (failure.get() != null) {
+                    permits.release();
+                    break;
+                }
+
+                final RequestAbort requestAbort = new RequestAbort();
+                requestAborts.add(requestAbort);
+                futures.add(executor.submit(() -> {
+                    try {
+                        return requestAbort.run(() -> task.run(item));
+                    } catch (Exception e) {
+                        // results are awaited in order, calls before this one are stopped right away
+                        if (failure.compareAndSet(null, e)) {
+                            abort(requestAborts, requestAbort);
+                        }
+                        throw e;
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            final List<R> results = new ArrayList<>(futures.size());
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            cancel(futures, requestAborts);
+
+            final Exception cause = failure.get() != null ? failure.get() : e;
+            if (cause instanceof OpenbravoClientException) {
+                throw (OpenbravoClientException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new OpenbravoClientException(e.getCause());
+            }
+        } catch (InterruptedException e) {
+            cancel(futures, requestAborts);
+            Thread.currentThread().interrupt();
+            throw new OpenbravoClientException(e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void abort(List<RequestAbort> requestAborts, RequestAbort failed) {
+        for (RequestAbort requestAbort : requestAborts) {
+            if (requestAbort != failed) {
+                requestAbort.abort();
+            }
+        }
+    }
+
+    private static void cancel(List<? extends Future<?>> futures, List<RequestAbort> requestAborts) {
+        for (int i = 0; i < futures.size(); i++) {
+            final Future<?> future = futures.get(i);
+            if (!future.isDone()) {
+                requestAborts.get(i).abort();
+            }
+            future.cancel(true);
+        }
+    }
+
+    interface Task<T, R> {
+        R run(T item) throws OpenbravoClientException;
+    }
+}
@@ -0,0 +1,56 @@
+package com.kinnarastudio.obclient.service;
+
+/**
+ * Immutable per-call flags of {@link OpenbravoClient}, every <code>with</code> method returns a new instance
+ */
+public final class CallOptions {
+    public final static CallOptions DEFAULT = new CallOptions(false, false, false);
+
+    private final boolean shortCircuit;
+    private final boolean noFilterActive;
+    private final boolean noCount;
+
+    private CallOptions(boolean shortCircuit, boolean noFilterActive, boolean noCount) {
+        this.shortCircuit = shortCircuit;
+        this.noFilterActive = noFilterActive;
+        this.noCount = noCount;
+    }
+
+    /**
+     * Stop posting remaining rows after the first failed row
+     */
+    public CallOptions withShortCircuit(boolean shortCircuit) {
+        return new CallOptions(shortCircuit, noFilterActive, noCount);
+    }
+
+    /**
+     * Include inactive records
+     */
+    public CallOptions withNoFilterActive(boolean noFilterActive) {
+        return new CallOptions(shortCircuit, noFilterActive, noCount);
+    }
+
+    /**
+     * Skip counting total rows on get
+     */
+    public CallOptions withNoCount(boolean noCount) {
+        return new CallOptions(shortCircuit, noFilterActive, noCount);
+    }
+
+    public boolean isShortCircuit() {
+        return shortCircuit;
+    }
+
+    public boolean isNoFilterActive() {
+        return noFilterActive;
+    }
+
+    public boolean isNoCount() {
+        return noCount;
+    }
+
+    @Override
+    public String toString() {
+        return "shortCircuit [" + shortCircuit + "] noFilterActive [" + noFilterActive + "] noCount [" + noCount + "]";
+    }
+}
@@ -0,0 +1,164 @@
+package com.kinnarastudio.obclient.service;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * When and how often {@link OpenbravoCluster} may send a duplicate of a slow read.
+ * <p>
+ * The hedge delay is a percentile of recent latencies of the same kind of read, so only reads slower
+ * than usual for their kind are duplicated; a cheap lookup by id is not judged against a large query.
+ * Each read earns a fraction of a hedge, the budget ratio, and each hedge spends a whole one, which keeps
+ * the extra load at most around the budget ratio of all reads.
+ */
+public class HedgingPolicy {
+    private final static long TOKEN = 1000;
+
+    private final double percentile;
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+    private final int minSamples;
+    private final long tokensPerRead;
+    private final long maxTokens;
+
+    private final int window;
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong tokens;
+
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder hedgeFired = new LongAdder();
+    private final LongAdder hedgeWon = new LongAdder();
+
+    /**
+     * p95 latency of the last 1000 reads of each kind, at least 10 ms, extra load up to 5%
+     */
+    public HedgingPolicy() {
+        this(0.95, Duration.ofMillis(10), Duration.ofSeconds(10), 0.05, 1000);
+    }
+
+    /**
+     * @param percentile  percentile of recent latencies used as hedge delay, between 0 and 1
+     * @param minDelay    lower bound of hedge delay
+     * @param maxDelay    upper bound of hedge delay
+     * @param budgetRatio maximum ratio of hedged reads to reads
+     * @param window      number of recent latencies to keep per kind of read
+     */
+    public HedgingPolicy(double percentile, Duration minDelay, Duration maxDelay, double budgetRatio, int window) {
+        if (percentile <= 0 || percentile > 1) {
+            throw new IllegalArgumentException("Percentile [" + percentile + "] must be within (0, 1]");
+        }
+
+        this.percentile = percentile;
+        this.minDelayMillis = minDelay.toMillis();
+        this.maxDelayMillis = maxDelay.toMillis();
+        this.minSamples = Math.min(window, 20);
+        this.tokensPerRead = Math.round(budgetRatio * TOKEN);
+        this.maxTokens = 10 * TOKEN;
+        this.tokens = new AtomicLong(0);
+        this.window = window;
+    }
+
+    /**
+     * @param readKind kind of read, as passed to {@link OpenbravoCluster#read(String, OpenbravoCluster.NodeCall)}
+     * @return delay before hedging a read, negative when there is not enough latency history yet
+     */
+    public long getDelayMillis(@Nonnull String readKind) {
+        final LatencyWindow latencyWindow = latencies.get(readKind);
+        return latencyWindow == null ? -1 : latencyWindow.delayMillis;
+    }
+
+    public long getReads() {
+        return reads.sum();
+    }
+
+    /**
+     * @return number of duplicate reads sent
+     */
+    public long getHedgeFired() {
+        return hedgeFired.sum();
+    }
+
+    /**
+     * @return number of duplicate reads that answered before the original
+     */
+    public long getHedgeWon() {
+        return hedgeWon.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "reads [" + getReads() + "] hedge fired [" + getHedgeFired() + "] hedge won [" + getHedgeWon() + "] read kinds [" + latencies.size() + "]";
+    }
+
+    void onRead() {
+        reads.increment();
+        tokens.getAndUpdate(t -> Math.min(maxTokens, t + tokensPerRead));
+    }
+
+    /**
+     * @return true if a hedge is within budget, the budget is spent
+     */
+    boolean tryHedge() {
+        final long remaining = tokens.getAndUpdate(t -> t >= TOKEN ? t - TOKEN : t);
+        if (remaining < TOKEN) return false;
+
+        hedgeFired.increment();
+        return true;
+    }
+
+    void onHedgeWon() {
+        hedgeWon.increment();
+    }
+
+    /**
+     * @param millis latency of a whole read, hedge included
+     */
+    void recordLatency(@Nonnull String readKind, long millis) {
+        latencies.computeIfAbsent(readKind, k -> new LatencyWindow(window)).record(millis);
+    }
+
+    /**
+     * Recent latencies of one kind of read and the hedge delay derived from them
+     */
+    private class LatencyWindow {
+        private final long[] latencies;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final AtomicLong recorded = new AtomicLong();
+        private volatile long delayMillis = -1;
+
+        private LatencyWindow(int window) {
+            this.latencies = new long[window];
+        }
+
+        private void record(long millis) {
+            final long count = recorded.getAndIncrement();
+            lock.lock();
+            try {
+                latencies[(int) (count % latencies.length)] = millis;
+            } finally {
+                lock.unlock();
+            }
+
+            // percentile is refreshed periodically rather than on every read
+            if (count + 1 >= minSamples && (count % 16 == 0 || delayMillis < 0)) {
+                final long[] sorted;
+                lock.lock();
+                try {
+                    sorted = Arrays.copyOf(latencies, (int) Math.min(count + 1, latencies.length));
+                } finally {
+                    lock.unlock();
+                }
+                Arrays.sort(sorted);
+
+                final int index = (int) Math.ceil(percentile * sorted.length) - 1;
+                delayMillis = Math.max(minDelayMillis, Math.min(maxDelayMillis, sorted[Math.max(0, index)]));
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.kinnarastudio.obclient.service;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Request body that writes <code>{"data":[...]}</code> straight to the connection output stream,
+ * one row at a time, using chunked transfer encoding.
+ * <p>
+ * Rows are pulled from the iterator while the request is being sent, so the payload is never
+ * materialized as a {@link JSONObject} or {@link String}. As the iterator can only be consumed once,
+ * this entity is not repeatable.
+ */
+public class JsonStreamEntity extends AbstractHttpEntity {
+    private final Iterator<Map<String, Object>> rows;
+
+    private boolean consumed = false;
+
+    public JsonStreamEntity(@Nonnull Iterator<Map<String, Object>> rows) {
+        this.rows = rows;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+        setChunked(true);
+    }
+
+    public JsonStreamEntity(@Nonnull Map<String, Object>[] rows) {
+        this(Arrays.asList(rows).iterator());
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent() {
+        throw new UnsupportedOperationException("Streaming entity does not support getContent, use writeTo instead");
+    }
+
+    @Override
+    public void writeTo(@Nonnull OutputStream outStream) throws IOException {
+        if (consumed) {
+            throw new IllegalStateException("Streaming entity has already been written");
+        }
+        consumed = true;
+
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(outStream, StandardCharsets.UTF_8));
+        writer.write("{\"data\":[");
+
+        boolean first = true;
+        while (rows.hasNext()) {
+            if (!first) writer.write(',');
+            writeRow(writer, rows.next());
+            first = false;
+        }
+
+        writer.write("]}");
+        writer.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return !consumed;
+    }
+
+    protected void writeRow(@Nonnull Writer writer, @Nonnull Map<String, Object> row) throws IOException {
+        writer.write('{');
+
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : row.entrySet()) {
+            if (!first) writer.write(',');
+            JSONObject.quote(entry.getKey(), writer);
+            writer.write(':');
+            writer.write(JSONWriter.valueToString(entry.getValue()));
+            first = false;
+        }
+
+        writer.write('}');
+    }
+}
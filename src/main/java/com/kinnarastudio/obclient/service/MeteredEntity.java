@@ -0,0 +1,219 @@
+package com.kinnarastudio.obclient.service;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Wraps request and response bodies to apply content coding and count raw and wire bytes
+ * into {@link TransferMetrics.EntityTransfer}
+ */
+abstract class MeteredEntity extends HttpEntityWrapper {
+    protected final TransferMetrics.EntityTransfer transfer;
+
+    protected MeteredEntity(@Nonnull HttpEntity wrappedEntity, @Nonnull TransferMetrics.EntityTransfer transfer) {
+        super(wrappedEntity);
+        this.transfer = transfer;
+    }
+
+    /**
+     * Request body, gzip compressed when requested
+     */
+    static class Request extends MeteredEntity {
+        private final boolean gzip;
+
+        Request(@Nonnull HttpEntity wrappedEntity, @Nonnull TransferMetrics.EntityTransfer transfer, boolean gzip) {
+            super(wrappedEntity, transfer);
+            this.gzip = gzip;
+        }
+
+        @Override
+        public Header getContentEncoding() {
+            return gzip ? new BasicHeader("Content-Encoding", "gzip") : super.getContentEncoding();
+        }
+
+        @Override
+        public long getContentLength() {
+            return gzip ? -1 : super.getContentLength();
+        }
+
+        @Override
+        public boolean isChunked() {
+            return gzip || super.isChunked();
+        }
+
+        /**
+         * Uncompressed content is that of the wrapped entity, only the gzip body is produced by {@link #writeTo(OutputStream)}
+         */
+        @Override
+        public InputStream getContent() throws IOException {
+            if (gzip) {
+                throw new UnsupportedOperationException("Compressed entity does not support getContent, use writeTo instead");
+            }
+            return wrappedEntity.getContent();
+        }
+
+        @Override
+        public void writeTo(@Nonnull OutputStream outStream) throws IOException {
+            final CountingOutputStream wire = new CountingOutputStream(outStream);
+            if (gzip) {
+                final GZIPOutputStream compressor = new GZIPOutputStream(wire, 8192);
+                final CountingOutputStream raw = new CountingOutputStream(compressor);
+                wrappedEntity.writeTo(raw);
+                compressor.finish();
+                wire.flush();
+                transfer.addRequest(raw.count, wire.count);
+            } else {
+                wrappedEntity.writeTo(wire);
+                wire.flush();
+                transfer.addRequest(wire.count, wire.count);
+            }
+        }
+    }
+
+    /**
+     * Response body, decoded according to its Content-Encoding
+     */
+    static class Response extends MeteredEntity {
+        @Nullable
+        private final String contentEncoding;
+
+        @Nullable
+        private CountingInputStream content = null;
+
+        Response(@Nonnull HttpEntity wrappedEntity, @Nonnull TransferMetrics.EntityTransfer transfer) {
+            super(wrappedEntity, transfer);
+            this.contentEncoding = Optional.of(wrappedEntity)
+                    .map(HttpEntity::getContentEncoding)
+                    .map(Header::getValue)
+                    .map(String::trim)
+                    .map(String::toLowerCase)
+                    .orElse(null);
+        }
+
+        protected boolean isDecoded() {
+            return "gzip".equals(contentEncoding) || "x-gzip".equals(contentEncoding) || "deflate".equals(contentEncoding);
+        }
+
+        @Override
+        public Header getContentEncoding() {
+            return isDecoded() ? null : super.getContentEncoding();
+        }
+
+        @Override
+        public long getContentLength() {
+            return isDecoded() ? -1 : super.getContentLength();
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            if (content == null) {
+                final CountingInputStream wire = new CountingInputStream(wrappedEntity.getContent(), null);
+                final InputStream decoded;
+                if ("deflate".equals(contentEncoding)) {
+                    decoded = new DeflateInputStream(wire);
+                } else if (isDecoded()) {
+                    decoded = new GZIPInputStream(wire);
+                } else {
+                    decoded = wire;
+                }
+                content = new CountingInputStream(decoded, wire);
+            }
+            return content;
+        }
+
+        /**
+         * @return decoded bytes read from the content so far
+         */
+        long getContentBytes() {
+            return content == null ? 0 : content.count;
+        }
+
+        @Override
+        public void writeTo(@Nonnull OutputStream outStream) throws IOException {
+            try (InputStream inStream = getContent()) {
+                inStream.transferTo(outStream);
+            }
+        }
+
+        private class CountingInputStream extends FilterInputStream {
+            @Nullable
+            private final CountingInputStream wire;
+
+            private long count = 0;
+
+            private boolean closed = false;
+
+            CountingInputStream(InputStream in, @Nullable CountingInputStream wire) {
+                super(in);
+                this.wire = wire;
+            }
+
+            @Override
+            public int read() throws IOException {
+                final int b = super.read();
+                if (b >= 0) count++;
+                return b;
+            }
+
+            @Override
+            public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+                final int n = super.read(b, off, len);
+                if (n > 0) count += n;
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                final long skipped = super.skip(n);
+                count += skipped;
+                return skipped;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!closed && wire != null) {
+                        transfer.addResponse(count, wire.count);
+                    }
+                    closed = true;
+                }
+            }
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.kinnarastudio.obclient.service;
+
+import com.kinnarastudio.obclient.exceptions.OpenbravoClientException;
+import com.kinnarastudio.obclient.exceptions.RestClientException;
+import com.kinnarastudio.obclient.model.ColumnarResult;
+import com.kinnarastudio.obclient.model.SpillableResult;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Immutable Openbravo client, safe to share between threads without locking.
+ * <p>
+ * Endpoint, credentials, TLS, connection pool, timeouts and compression are fixed when the client is
+ * built; the connection pool is shared by every call. Flags such as {@link CallOptions#isNoFilterActive()}
+ * are per call, use {@link #withOptions(CallOptions)} to get a client with other flags sharing the
+ * same resources.
+ * <pre>
+ * OpenbravoClient client = OpenbravoClient.builder()
+ *         .setBaseUrl("https://erp.example.com/openbravo")
+ *         .setCredentials(username, password)
+ *         .build();
+ *
+ * Map&lt;String, Object&gt;[] products = client
+ *         .withOptions(CallOptions.DEFAULT.withNoFilterActive(true))
+ *         .get("Product", null, "name like ?", new Object[]{"A%"}, "name", false, 0, 99);
+ * </pre>
+ */
+public class OpenbravoClient implements Closeable {
+    @Nullable
+    private final String baseUrl;
+    @Nullable
+    private final OpenbravoCluster cluster;
+    private final String username;
+    private final String password;
+    private final RestService restService;
+    private final TransferMetrics transferMetrics;
+    private final PageSizeTuner pageSizeTuner;
+    private final CallOptions options;
+
+    /**
+     * Only the client created by the builder closes the connection pool
+     */
+    private final boolean owner;
+
+    private OpenbravoClient(Builder builder, RestService restService, TransferMetrics transferMetrics) {
+        this.baseUrl = builder.baseUrl;
+        this.cluster = builder.cluster;
+        this.username = builder.username;
+        this.password = builder.password;
+        this.restService = restService;
+        this.transferMetrics = transferMetrics;
+        this.pageSizeTuner = builder.pageSizeTuner;
+        this.options = builder.options;
+        this.owner = true;
+    }
+
+    private OpenbravoClient(OpenbravoClient parent, CallOptions options) {
+        this.baseUrl = parent.baseUrl;
+        this.cluster = parent.cluster;
+        this.username = parent.username;
+        this.password = parent.password;
+        this.restService = parent.restService;
+        this.transferMetrics = parent.transferMetrics;
+        this.pageSizeTuner = parent.pageSizeTuner;
+        this.options = options;
+        this.owner = false;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return client sharing endpoint and connection pool of this client with other call options
+     */
+    public OpenbravoClient withOptions(@Nonnull CallOptions options) {
+        return new OpenbravoClient(this, options);
+    }
+
+    public CallOptions getOptions() {
+        return options;
+    }
+
+    public TransferMetrics getTransferMetrics() {
+        return transferMetrics;
+    }
+
+    public PageSizeTuner getPageSizeTuner() {
+        return pageSizeTuner;
+    }
+
+    @Nonnull
+    public Map<String, Object> get(@Nonnull String tableEntity, @Nonnull String recordId) throws OpenbravoClientException {
+        return read("get-id:" + tableEntity, url -> service().get(url, tableEntity, username, password, recordId));
+    }
+
+    public <T> Optional<T> get(@Nonnull Class<T> clazz, @Nonnull String primaryKey) throws OpenbravoClientException {
+        return read("get:" + clazz.getName(), url -> service().get(clazz, url, username, password, primaryKey));
+    }
+
+    public <T> Object[] get(@Nonnull Class<T> clazz, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc, @Nullable Integer startRow, @Nullable Integer endRow) throws OpenbravoClientException {
+        return read("get:" + clazz.getName(), url -> service().get(clazz, url, username, password, condition, arguments, sort, desc, startRow, endRow));
+    }
+
+    public Map<String, Object>[] get(@Nonnull String tableEntity, @Nullable String[] fields, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc, @Nullable Integer startRow, @Nullable Integer endRow) throws OpenbravoClientException {
+        return read("get:" + tableEntity, url -> service().get(url, tableEntity, username, password, fields, condition, arguments, sort, desc, startRow, endRow));
+    }
+
+    public ColumnarResult getColumnar(@Nonnull String tableEntity, @Nullable String[] fields, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc, @Nullable Integer startRow, @Nullable Integer endRow) throws OpenbravoClientException {
+        return read("get:" + tableEntity, url -> service().getColumnar(url, tableEntity, username, password, fields, condition, arguments, sort, desc, startRow, endRow));
+    }
+
+    public Map<String, Object>[] getAll(@Nonnull String tableEntity, @Nullable String[] fields, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc) throws OpenbravoClientException {
+        return read(null, url -> service().getAll(url, tableEntity, username, password, fields, condition, arguments, sort, desc));
+    }
+
+    /**
+     * The result holds a spill file, so the read is not retried on another node where an abandoned attempt would leave its file behind
+     */
+    public SpillableResult getAll(@Nonnull String tableEntity, @Nullable String[] fields, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc, long heapBudget) throws OpenbravoClientException {
+        return readOnce(url -> service().getAll(url, tableEntity, username, password, fields, condition, arguments, sort, desc, heapBudget));
+    }
+
+    /**
+     * Pages already passed to the consumer cannot be taken back, so the read is not retried on another node
+     */
+    public void forEachPage(@Nonnull String tableEntity, @Nullable String[] fields, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc, @Nonnull Consumer<Map<String, Object>[]> pageConsumer) throws OpenbravoClientException {
+        readOnce(url -> {
+            service().forEachPage(url, tableEntity, username, password, fields, condition, arguments, sort, desc, pageConsumer);
+            return null;
+        });
+    }
+
+    public long count(@Nonnull String tableEntity, @Nullable String condition, Object[] arguments) throws OpenbravoClientException {
+        return read("count:" + tableEntity, url -> service().count(url, tableEntity, username, password, condition, arguments));
+    }
+
+    public Map<String, Object>[] post(@Nonnull String tableEntity, @Nonnull Map<String, Object>[] rows) throws OpenbravoClientException {
+        return write(url -> service().post(url, tableEntity, username, password, rows));
+    }
+
+    public Map<String, Object>[] postBatch(@Nonnull String tableEntity, @Nonnull Map<String, Object>[] rows) throws OpenbravoClientException {
+        return write(url -> service().postBatch(url, tableEntity, username, password, rows));
+    }
+
+    public Map<String, Object>[] postBatch(@Nonnull String tableEntity, @Nonnull Iterator<Map<String, Object>> rows) throws OpenbravoClientException {
+        return write(url -> service().postBatch(url, tableEntity, username, password, rows));
+    }
+
+    /**
+     * Get records by id with at most maxConcurrency requests in flight, also bounded by the connections per route
+     *
+     * @see OpenbravoService#getParallel(String, String, String, String, String[], int)
+     */
+    public Map<String, Object>[] getParallel(@Nonnull String tableEntity, @Nonnull String[] recordIds, int maxConcurrency) throws OpenbravoClientException {
+        return cluster == null
+                ? service().getParallel(baseUrl, tableEntity, username, password, recordIds, maxConcurrency)
+                : service().getParallel(cluster, tableEntity, username, password, recordIds, maxConcurrency);
+    }
+
+    /**
+     * Post rows with at most maxConcurrency requests in flight, also bounded by the connections per route
+     *
+     * @see OpenbravoService#postParallel(String, String, String, String, Map[], int)
+     */
+    public Map<String, Object>[] postParallel(@Nonnull String tableEntity, @Nonnull Map<String, Object>[] rows, int maxConcurrency) throws OpenbravoClientException {
+        return cluster == null
+                ? service().postParallel(baseUrl, tableEntity, username, password, rows, maxConcurrency)
+                : service().postParallel(cluster, tableEntity, username, password, rows, maxConcurrency);
+    }
+
+    public Map<String, Object> delete(@Nonnull String tableEntity, @Nonnull String recordId) throws OpenbravoClientException {
+        return write(url -> service().delete(url, tableEntity, recordId, username, password));
+    }
+
+    /**
+     * Close the connection pool. Clients from {@link #withOptions(CallOptions)} share the pool and
+     * do not close it; the cluster, if any, is owned by the caller.
+     */
+    @Override
+    public void close() throws IOException {
+        if (owner) {
+            restService.shutdown();
+        }
+    }
+
+    /**
+     * Lightweight service bound to the shared rest service and the options of this client
+     */
+    protected OpenbravoService service() {
+        return new OpenbravoService(restService, transferMetrics, pageSizeTuner, options);
+    }
+
+    /**
+     * @param readKind kind of a single-request read that may be hedged, null for reads sending several requests
+     */
+    private <T> T read(@Nullable String readKind, OpenbravoCluster.NodeCall<T> call) throws OpenbravoClientException {
+        return cluster == null ? call.call(baseUrl) : cluster.read(readKind, call);
+    }
+
+    private <T> T readOnce(OpenbravoCluster.NodeCall<T> call) throws OpenbravoClientException {
+        return cluster == null ? call.call(baseUrl) : cluster.readOnce(call);
+    }
+
+    private <T> T write(OpenbravoCluster.NodeCall<T> call) throws OpenbravoClientException {
+        return cluster == null ? call.call(baseUrl) : cluster.write(call);
+    }
+
+    public static class Builder {
+        @Nullable
+        private String baseUrl = null;
+        @Nullable
+        private OpenbravoCluster cluster = null;
+        private String username = null;
+        private String password = null;
+        private boolean ignoreCertificateError = false;
+        private int maxConnections = 200;
+        private int maxConnectionsPerRoute = 50;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration socketTimeout = Duration.ofMinutes(1);
+        private Duration connectionRequestTimeout = Duration.ofSeconds(10);
+        private boolean requestCompression = false;
+        private int compressionThreshold = RestService.DEFAULT_COMPRESSION_THRESHOLD;
+        private PageSizeTuner pageSizeTuner = new PageSizeTuner();
+        private CallOptions options = CallOptions.DEFAULT;
+
+        private Builder() {
+        }
+
+        public Builder setBaseUrl(@Nonnull String baseUrl) {
+            this.baseUrl = baseUrl;
+            this.cluster = null;
+            return this;
+        }
+
+        /**
+         * Route calls through a cluster instead of a single base url
+         */
+        public Builder setCluster(@Nonnull OpenbravoCluster cluster) {
+            this.cluster = cluster;
+            this.baseUrl = null;
+            return this;
+        }
+
+        public Builder setCredentials(@Nonnull String username, @Nonnull String password) {
+            this.username = username;
+            this.password = password;
+            return this;
+        }
+
+        public Builder setIgnoreCertificateError(boolean ignoreCertificateError) {
+            this.ignoreCertificateError = ignoreCertificateError;
+            return this;
+        }
+
+        public Builder setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        public Builder setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        public Builder setConnectTimeout(@Nonnull Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder setSocketTimeout(@Nonnull Duration socketTimeout) {
+            this.socketTimeout = socketTimeout;
+            return this;
+        }
+
+        /**
+         * Maximum wait for a connection from the pool
+         */
+        public Builder setConnectionRequestTimeout(@Nonnull Duration connectionRequestTimeout) {
+            this.connectionRequestTimeout = connectionRequestTimeout;
+            return this;
+        }
+
+        /**
+         * @see RestService#setRequestCompression(boolean)
+         */
+        public Builder setRequestCompression(boolean requestCompression) {
+            this.requestCompression = requestCompression;
+            return this;
+        }
+
+        public Builder setCompressionThreshold(int compressionThreshold) {
+            this.compressionThreshold = compressionThreshold;
+            return this;
+        }
+
+        public Builder setPageSizeTuner(@Nonnull PageSizeTuner pageSizeTuner) {
+            this.pageSizeTuner = pageSizeTuner;
+            return this;
+        }
+
+        /**
+         * Options of every call unless overridden with {@link OpenbravoClient#withOptions(CallOptions)}
+         */
+        public Builder setOptions(@Nonnull CallOptions options) {
+            this.options = options;
+            return this;
+        }
+
+        public OpenbravoClient build() throws OpenbravoClientException {
+            if (baseUrl == null && cluster == null) {
+                throw new OpenbravoClientException("Base url or cluster is required");
+            }
+
+            if (username == null || password == null) {
+                throw new OpenbravoClientException("Credentials are required");
+            }
+
+            try {
+                final TransferMetrics transferMetrics = new TransferMetrics();
+                final RestService restService = RestService.createShared(ignoreCertificateError, maxConnections, maxConnectionsPerRoute, connectTimeout, socketTimeout, connectionRequestTimeout);
+                restService.setRequestCompression(requestCompression);
+                restService.setCompressionThreshold(compressionThreshold);
+                restService.setTransferMetrics(transferMetrics);
+
+                return new OpenbravoClient(this, restService, transferMetrics);
+            } catch (RestClientException e) {
+                throw new OpenbravoClientException(e);
+            }
+        }
+    }
+}
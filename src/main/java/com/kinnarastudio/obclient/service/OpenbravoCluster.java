@@ -0,0 +1,718 @@
+package com.kinnarastudio.obclient.service;
+
+import com.kinnarastudio.obclient.exceptions.OpenbravoClientException;
+import com.kinnarastudio.obclient.exceptions.RestClientException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.ssl.SSLContextBuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Group of Openbravo application nodes serving the same database.
+ * <p>
+ * Reads are spread over healthy nodes, either to the node with the least outstanding requests or by
+ * weighted round-robin, and are retried on another node when a node fails. Writes go to the primary
+ * node, or stick to one node until it is ejected, and are never retried.
+ * <p>
+ * A node is ejected after consecutive failures, from calls or from the periodic health check, and
+ * re-admitted once the health check succeeds again. When no node is healthy every node is tried.
+ * <p>
+ * With a {@link HedgingPolicy}, a read that takes longer than usual is duplicated to another node,
+ * or to the same node over another connection when it is the only one. The first answer is used and
+ * the other request is cancelled.
+ */
+public class OpenbravoCluster implements Closeable {
+    public final static Logger logger = Logger.getLogger(OpenbravoCluster.class.getName());
+
+    private final List<Node> nodes;
+    private final ReadStrategy readStrategy;
+    private final WriteStrategy writeStrategy;
+    private final int failureThreshold;
+    private final int recoveryThreshold;
+    private final HealthCheck healthCheck;
+
+    @Nullable
+    private final CloseableHttpClient healthCheckClient;
+
+    @Nullable
+    private final ScheduledExecutorService scheduler;
+
+    @Nullable
+    private final HedgingPolicy hedgingPolicy;
+
+    @Nullable
+    private final ExecutorService hedgingExecutor;
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    @Nullable
+    private volatile Node writeNode = null;
+
+    /**
+     * Guards the choice of the sticky write node, selection logs and must not pin a virtual thread
+     */
+    private final ReentrantLock writeNodeLock = new ReentrantLock();
+    private final ReentrantLock roundRobinLock = new ReentrantLock();
+
+    private OpenbravoCluster(Builder builder) throws RestClientException {
+        this.nodes = Collections.unmodifiableList(builder.nodes);
+        this.readStrategy = builder.readStrategy;
+        this.writeStrategy = builder.writeStrategy;
+        this.failureThreshold = builder.failureThreshold;
+        this.recoveryThreshold = builder.recoveryThreshold;
+        this.hedgingPolicy = builder.hedgingPolicy;
+        this.hedgingExecutor = hedgingPolicy == null ? null : TaskExecutors.newTaskExecutor("openbravo-cluster-hedged-read");
+
+        if (builder.primary != null) {
+            writeNode = nodes.stream()
+                    .filter(n -> n.baseUrl.equals(builder.primary))
+                    .findFirst()
+                    .orElseThrow(() -> new RestClientException("Primary [" + builder.primary + "] is not a node of the cluster"));
+        }
+
+        if (builder.healthCheck != null) {
+            this.healthCheckClient = null;
+            this.healthCheck = builder.healthCheck;
+        } else {
+            this.healthCheckClient = getHealthCheckClient(builder.ignoreCertificateError, builder.healthCheckTimeout);
+            this.healthCheck = this::checkHttp;
+        }
+
+        if (builder.healthCheckInterval.isZero() || builder.healthCheckInterval.isNegative()) {
+            this.scheduler = null;
+        } else {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "openbravo-cluster-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long interval = builder.healthCheckInterval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::checkNodes, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Run an idempotent call on a node chosen by the read strategy, retrying on other nodes
+     * when the node fails. The call is never hedged.
+     */
+    public <T> T read(@Nonnull NodeCall<T> call) throws OpenbravoClientException {
+        return read(null, call);
+    }
+
+    /**
+     * Same as {@link #read(NodeCall)}, and hedged when the cluster has a {@link HedgingPolicy}. Only meant for
+     * calls sending a single request; reads of the same kind, such as <code>get:Product</code>, are expected to
+     * cost about the same and share the latency history the hedge delay is taken from.
+     *
+     * @param readKind kind of read, null to disable hedging
+     */
+    public <T> T read(@Nullable String readKind, @Nonnull NodeCall<T> call) throws OpenbravoClientException {
+        final List<Node> tried = new ArrayList<>();
+        OpenbravoClientException lastException = null;
+
+        if (hedgingPolicy != null && readKind != null) {
+            try {
+                return readHedged(readKind, call, tried);
+            } catch (OpenbravoClientException e) {
+                if (!isNodeFailure(e)) throw e;
+
+                logger.warning("read : hedged read on " + tried + " failed [" + e.getMessage() + "]");
+                lastException = e;
+            }
+        }
+
+        for (int attempt = 0; attempt < nodes.size(); attempt++) {
+            final Node node = selectReadNode(tried);
+            if (node == null) break;
+
+            tried.add(node);
+            try {
+                return execute(node, call);
+            } catch (OpenbravoClientException e) {
+                if (!isNodeFailure(e)) throw e;
+
+                logger.warning("read : node [" + node.baseUrl + "] failed [" + e.getMessage() + "]");
+                lastException = e;
+            }
+        }
+
+        throw lastException != null ? lastException : new OpenbravoClientException("No node available");
+    }
+
+    /**
+     * Run a read on a single node chosen by the read strategy, without retry nor hedging. For reads with
+     * side effects on the caller, such as streaming pages to a consumer, that cannot be safely repeated.
+     */
+    public <T> T readOnce(@Nonnull NodeCall<T> call) throws OpenbravoClientException {
+        final Node node = selectReadNode(new ArrayList<>());
+        if (node == null) {
+            throw new OpenbravoClientException("No node available");
+        }
+        return execute(node, call);
+    }
+
+    /**
+     * Run a call on the write node. Writes are not retried, a failed write may have been applied.
+     */
+    public <T> T write(@Nonnull NodeCall<T> call) throws OpenbravoClientException {
+        return execute(selectWriteNode(), call);
+    }
+
+    @Nullable
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    @Nonnull
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Run health check of every node once
+     */
+    public void checkNodes() {
+        for (Node node : nodes) {
+            boolean healthy;
+            try {
+                healthy = healthCheck.check(node.baseUrl);
+            } catch (Exception e) {
+                logger.log(Level.FINE, "checkNodes : node [" + node.baseUrl + "] " + e.getMessage(), e);
+                healthy = false;
+            }
+
+            if (healthy) {
+                onSuccess(node, true);
+            } else {
+                onFailure(node);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+
+        if (hedgingExecutor != null) {
+            hedgingExecutor.shutdownNow();
+        }
+
+        if (healthCheckClient != null) {
+            healthCheckClient.close();
+        }
+    }
+
+    protected <T> T execute(@Nonnull Node node, @Nonnull NodeCall<T> call) throws OpenbravoClientException {
+        return execute(node, call, () -> true);
+    }
+
+    /**
+     * @param countFailure whether a failure should count against the node, a cancelled hedged read does not
+     */
+    protected <T> T execute(@Nonnull Node node, @Nonnull NodeCall<T> call, @Nonnull BooleanSupplier countFailure) throws OpenbravoClientException {
+        node.outstanding.incrementAndGet();
+        try {
+            final T result = call.call(node.baseUrl);
+            onSuccess(node, false);
+            return result;
+        } catch (OpenbravoClientException e) {
+            if (isNodeFailure(e) && countFailure.getAsBoolean()) {
+                onFailure(node);
+            }
+            throw e;
+        } finally {
+            node.outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * Send the read, and a duplicate when it has not answered within the hedge delay and the budget allows.
+     * <p>
+     * Latency is that of the whole read, from the first attempt until an answer. Timing attempts on their
+     * own would only ever sample the fast ones, slow attempts are aborted once the hedge wins, and the hedge
+     * delay would keep drifting down.
+     */
+    protected <T> T readHedged(@Nonnull String readKind, @Nonnull NodeCall<T> call, @Nonnull List<Node> tried) throws OpenbravoClientException {
+        final Node primary = selectReadNode(tried);
+        if (primary == null) {
+            throw new OpenbravoClientException("No node available");
+        }
+        tried.add(primary);
+
+        hedgingPolicy.onRead();
+
+        final long delay = hedgingPolicy.getDelayMillis(readKind);
+        final long start = System.nanoTime();
+
+        // no latency history yet, nothing to hedge against
+        final T result = delay < 0 ? execute(primary, call) : hedge(primary, delay, call, tried);
+
+        hedgingPolicy.recordLatency(readKind, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return result;
+    }
+
+    private <T> T hedge(@Nonnull Node primary, long delay, @Nonnull NodeCall<T> call, @Nonnull List<Node> tried) throws OpenbravoClientException {
+        final AtomicBoolean settled = new AtomicBoolean(false);
+        final Attempt<T> first = submit(primary, call, settled);
+        try {
+            try {
+                return first.result.get(delay, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ignored) {
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OpenbravoClientException(e);
+            }
+
+            if (!hedgingPolicy.tryHedge()) {
+                return await(first.result);
+            }
+
+            final Node secondary = Optional.ofNullable(selectReadNode(tried)).orElse(primary);
+            tried.add(secondary);
+
+            final Attempt<T> second = submit(secondary, call, settled);
+            final CompletableFuture<T> winner = new CompletableFuture<>();
+            first.result.whenComplete((value, error) -> {
+                if (error == null) winner.complete(value);
+                else if (second.result.isCompletedExceptionally()) winner.completeExceptionally(error);
+            });
+            second.result.whenComplete((value, error) -> {
+                if (error == null) {
+                    if (winner.complete(value)) hedgingPolicy.onHedgeWon();
+                } else if (first.result.isCompletedExceptionally()) {
+                    winner.completeExceptionally(error);
+                }
+            });
+
+            try {
+                return await(winner);
+            } finally {
+                settled.set(true);
+                second.cancel();
+            }
+        } finally {
+            settled.set(true);
+            first.cancel();
+        }
+    }
+
+    private <T> Attempt<T> submit(Node node, NodeCall<T> call, AtomicBoolean settled) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final RequestAbort requestAbort = new RequestAbort();
+        final Future<?> task = hedgingExecutor.submit(() -> {
+            try {
+                final T value = requestAbort.run(() -> execute(node, call, () -> !settled.get() && !requestAbort.isAborted()));
+                result.complete(value);
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return new Attempt<>(result, task, requestAbort);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws OpenbravoClientException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OpenbravoClientException(e);
+        }
+    }
+
+    private static OpenbravoClientException unwrap(ExecutionException e) {
+        final Throwable cause = e.getCause();
+        return cause instanceof OpenbravoClientException
+                ? (OpenbravoClientException) cause
+                : new OpenbravoClientException(cause);
+    }
+
+    /**
+     * Transport failures and 5xx count against the node; 4xx, unexpected responses such as a login page and
+     * errors returned by Openbravo do not, every node would answer the same
+     */
+    protected boolean isNodeFailure(@Nonnull OpenbravoClientException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RestClientException) {
+            final RestClientException restClientException = (RestClientException) cause;
+            return restClientException.isTransportError() || restClientException.isServerError();
+        }
+        return cause instanceof IOException;
+    }
+
+    @Nullable
+    protected Node selectReadNode(@Nonnull List<Node> excluded) {
+        List<Node> candidates = nodes.stream()
+                .filter(n -> n.healthy && !excluded.contains(n))
+                .collect(Collectors.toList());
+
+        if (candidates.isEmpty()) {
+            candidates = nodes.stream()
+                    .filter(n -> !excluded.contains(n))
+                    .collect(Collectors.toList());
+        }
+
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        if (readStrategy == ReadStrategy.WEIGHTED_ROUND_ROBIN) {
+            return selectWeightedRoundRobin(candidates);
+        } else {
+            return selectLeastOutstanding(candidates);
+        }
+    }
+
+    @Nonnull
+    protected Node selectWriteNode() throws OpenbravoClientException {
+        final Node current = writeNode;
+        if (current != null && current.healthy) {
+            return current;
+        }
+
+        if (writeStrategy == WriteStrategy.PRIMARY && current != null) {
+            // primary is down, use another node without giving up the primary
+            return nodes.stream()
+                    .filter(n -> n.healthy)
+                    .findFirst()
+                    .orElse(current);
+        }
+
+        writeNodeLock.lock();
+        try {
+            final Node sticky = writeNode;
+            if (sticky != null && sticky.healthy) {
+                return sticky;
+            }
+
+            final Node selected = nodes.stream()
+                    .filter(n -> n.healthy)
+                    .findFirst()
+                    .orElse(sticky != null ? sticky : nodes.get(0));
+            if (selected != sticky) {
+                logger.info("selectWriteNode : writes stick to node [" + selected.baseUrl + "]");
+            }
+            writeNode = selected;
+            return selected;
+        } finally {
+            writeNodeLock.unlock();
+        }
+    }
+
+    private Node selectLeastOutstanding(List<Node> candidates) {
+        final int start = Math.floorMod(nextIndex.getAndIncrement(), candidates.size());
+
+        Node selected = null;
+        double lowest = Double.MAX_VALUE;
+        for (int i = 0; i < candidates.size(); i++) {
+            final Node node = candidates.get((start + i) % candidates.size());
+            final double load = (double) node.outstanding.get() / node.weight;
+            if (load < lowest) {
+                lowest = load;
+                selected = node;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Smooth weighted round-robin, nodes are interleaved in proportion to their weight
+     */
+    private Node selectWeightedRoundRobin(List<Node> candidates) {
+        roundRobinLock.lock();
+        try {
+            int total = 0;
+            Node selected = null;
+            for (Node node : candidates) {
+                node.currentWeight += node.weight;
+                total += node.weight;
+                if (selected == null || node.currentWeight > selected.currentWeight) {
+                    selected = node;
+                }
+            }
+
+            selected.currentWeight -= total;
+            return selected;
+        } finally {
+            roundRobinLock.unlock();
+        }
+    }
+
+    private void onSuccess(Node node, boolean fromHealthCheck) {
+        node.consecutiveFailures.set(0);
+        if (node.healthy) return;
+
+        // calls may still reach an ejected node when all nodes are down, only health checks re-admit
+        if (fromHealthCheck && node.consecutiveSuccesses.incrementAndGet() >= recoveryThreshold) {
+            node.healthy = true;
+            node.consecutiveSuccesses.set(0);
+            logger.info("node [" + node.baseUrl + "] re-admitted");
+        }
+    }
+
+    private void onFailure(Node node) {
+        node.consecutiveSuccesses.set(0);
+        if (node.consecutiveFailures.incrementAndGet() >= failureThreshold && node.healthy) {
+            node.healthy = false;
+            logger.warning("node [" + node.baseUrl + "] ejected after [" + node.consecutiveFailures.get() + "] consecutive failures");
+        }
+    }
+
+    /**
+     * Node is considered up when it answers the jsonrest endpoint with anything but a server error,
+     * the request is not authenticated so 401 is expected
+     */
+    private boolean checkHttp(String baseUrl) throws IOException {
+        final HttpGet request = new HttpGet(baseUrl + "/org.openbravo.service.json.jsonrest/");
+        try (CloseableHttpResponse response = healthCheckClient.execute(request)) {
+            return response.getStatusLine().getStatusCode() < 500;
+        }
+    }
+
+    private static CloseableHttpClient getHealthCheckClient(boolean ignoreCertificateError, Duration timeout) throws RestClientException {
+        final int timeoutMillis = (int) timeout.toMillis();
+        final RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeoutMillis)
+                .setConnectionRequestTimeout(timeoutMillis)
+                .setSocketTimeout(timeoutMillis)
+                .build();
+
+        final HttpClientBuilder builder = HttpClientBuilder.create()
+                .setDefaultRequestConfig(requestConfig)
+                .disableAutomaticRetries();
+
+        if (ignoreCertificateError) {
+            try {
+                builder.setSSLContext(new SSLContextBuilder().loadTrustMaterial(null, (certificate, authType) -> true).build())
+                        .setSSLHostnameVerifier(new NoopHostnameVerifier());
+            } catch (Exception e) {
+                throw new RestClientException(e);
+            }
+        }
+
+        return builder.build();
+    }
+
+    public enum ReadStrategy {
+        LEAST_OUTSTANDING_REQUESTS,
+        WEIGHTED_ROUND_ROBIN
+    }
+
+    public enum WriteStrategy {
+        /**
+         * Writes go to the designated primary node, another node is used only while the primary is ejected
+         */
+        PRIMARY,
+
+        /**
+         * Writes stick to one healthy node until it is ejected
+         */
+        STICKY
+    }
+
+    @FunctionalInterface
+    public interface NodeCall<T> {
+        T call(@Nonnull String baseUrl) throws OpenbravoClientException;
+    }
+
+    @FunctionalInterface
+    public interface HealthCheck {
+        boolean check(@Nonnull String baseUrl) throws Exception;
+    }
+
+    private static class Attempt<T> {
+        private final CompletableFuture<T> result;
+        private final Future<?> task;
+        private final RequestAbort requestAbort;
+
+        private Attempt(CompletableFuture<T> result, Future<?> task, RequestAbort requestAbort) {
+            this.result = result;
+            this.task = task;
+            this.requestAbort = requestAbort;
+        }
+
+        /**
+         * Stop an attempt still running: its http request is aborted, which closes the connection and
+         * stops waiting for the server, interrupting the thread alone would not
+         */
+        private void cancel() {
+            if (!result.isDone()) {
+                requestAbort.abort();
+            }
+            task.cancel(true);
+        }
+    }
+
+    public static class Node {
+        private final String baseUrl;
+        private final int weight;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicInteger consecutiveSuccesses = new AtomicInteger();
+        private volatile boolean healthy = true;
+        private int currentWeight = 0;
+
+        private Node(String baseUrl, int weight) {
+            this.baseUrl = baseUrl;
+            this.weight = weight;
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public int getOutstandingRequests() {
+            return outstanding.get();
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        @Override
+        public String toString() {
+            return "node [" + baseUrl + "] weight [" + weight + "] outstanding [" + outstanding.get() + "] healthy [" + healthy + "]";
+        }
+    }
+
+    public static class Builder {
+        private final List<Node> nodes = new ArrayList<>();
+        private ReadStrategy readStrategy = ReadStrategy.LEAST_OUTSTANDING_REQUESTS;
+        private WriteStrategy writeStrategy = WriteStrategy.STICKY;
+        @Nullable
+        private String primary = null;
+        private int failureThreshold = 3;
+        private int recoveryThreshold = 2;
+        private Duration healthCheckInterval = Duration.ofSeconds(10);
+        private Duration healthCheckTimeout = Duration.ofSeconds(5);
+        private boolean ignoreCertificateError = false;
+        @Nullable
+        private HealthCheck healthCheck = null;
+        @Nullable
+        private HedgingPolicy hedgingPolicy = null;
+
+        private Builder() {
+        }
+
+        public Builder addNode(@Nonnull String baseUrl) {
+            return addNode(baseUrl, 1);
+        }
+
+        public Builder addNode(@Nonnull String baseUrl, int weight) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Weight of node [" + baseUrl + "] must be positive");
+            }
+            nodes.add(new Node(baseUrl, weight));
+            return this;
+        }
+
+        public Builder setReadStrategy(@Nonnull ReadStrategy readStrategy) {
+            this.readStrategy = readStrategy;
+            return this;
+        }
+
+        /**
+         * Send writes to this node, it has to be added with {@link #addNode(String)} as well
+         */
+        public Builder setPrimary(@Nonnull String baseUrl) {
+            this.primary = baseUrl;
+            this.writeStrategy = WriteStrategy.PRIMARY;
+            return this;
+        }
+
+        /**
+         * Consecutive failures before a node is ejected
+         */
+        public Builder setFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        /**
+         * Consecutive successful health checks before an ejected node is re-admitted
+         */
+        public Builder setRecoveryThreshold(int recoveryThreshold) {
+            this.recoveryThreshold = recoveryThreshold;
+            return this;
+        }
+
+        /**
+         * Zero disables active health checks, ejected nodes are then re-admitted only through {@link #checkNodes()}
+         */
+        public Builder setHealthCheckInterval(@Nonnull Duration healthCheckInterval) {
+            this.healthCheckInterval = healthCheckInterval;
+            return this;
+        }
+
+        public Builder setHealthCheckTimeout(@Nonnull Duration healthCheckTimeout) {
+            this.healthCheckTimeout = healthCheckTimeout;
+            return this;
+        }
+
+        public Builder setHealthCheck(@Nonnull HealthCheck healthCheck) {
+            this.healthCheck = healthCheck;
+            return this;
+        }
+
+        /**
+         * Enable hedged reads, only for calls that are safe to send twice
+         */
+        public Builder setHedgingPolicy(@Nonnull HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = hedgingPolicy;
+            return this;
+        }
+
+        public Builder setIgnoreCertificateError(boolean ignoreCertificateError) {
+            this.ignoreCertificateError = ignoreCertificateError;
+            return this;
+        }
+
+        public OpenbravoCluster build() throws RestClientException {
+            if (nodes.isEmpty()) {
+                throw new RestClientException("Cluster requires at least one node");
+            }
+            return new OpenbravoCluster(this);
+        }
+    }
+}
@@ -8,21 +8,33 @@ import com.kinnarastudio.obclient.annotation.ObEntity;
 import com.kinnarastudio.obclient.annotation.ObField;
 import com.kinnarastudio.obclient.exceptions.OpenbravoClientException;
 import com.kinnarastudio.obclient.exceptions.OpenbravoCreateRecordException;
+import com.kinnarastudio.obclient.exceptions.OpenbravoGetResponseException;
 import com.kinnarastudio.obclient.exceptions.RestClientException;
+import com.kinnarastudio.obclient.model.ColumnarResult;
+import com.kinnarastudio.obclient.model.SpillableResult;
+import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -37,11 +49,48 @@ public class OpenbravoService {
     private boolean ignoreCertificateError = false;
     private boolean shortCircuit = false;
     private boolean noFilterActive = false;
+    private boolean noCount = false;
     private boolean cutCircuit = false;
+    private boolean requestCompression = false;
+    private int compressionThreshold = RestService.DEFAULT_COMPRESSION_THRESHOLD;
+    private final TransferMetrics transferMetrics;
+    private PageSizeTuner pageSizeTuner;
+
+    /**
+     * Guards the circuit state of {@link #post(String, String, String, String, Map[])}. A lock rather than
+     * a monitor, so a virtual thread blocked on the http call does not pin its carrier thread.
+     */
+    private final ReentrantLock postLock = new ReentrantLock();
+
+    /**
+     * Pooled rest service of an {@link OpenbravoClient}, already configured and not closed after each call
+     */
+    @Nullable
+    private final RestService sharedRestService;
 
     private OpenbravoService() {
+        this.sharedRestService = null;
+        this.transferMetrics = new TransferMetrics();
+        this.pageSizeTuner = new PageSizeTuner();
+    }
+
+    /**
+     * Service for a single call of {@link OpenbravoClient}, flags are fixed for the lifetime of this instance
+     */
+    OpenbravoService(@Nonnull RestService sharedRestService, @Nonnull TransferMetrics transferMetrics, @Nonnull PageSizeTuner pageSizeTuner, @Nonnull CallOptions options) {
+        this.sharedRestService = sharedRestService;
+        this.transferMetrics = transferMetrics;
+        this.pageSizeTuner = pageSizeTuner;
+        this.shortCircuit = options.isShortCircuit();
+        this.noFilterActive = options.isNoFilterActive();
+        this.noCount = options.isNoCount();
     }
 
+    /**
+     * @deprecated flags of the shared instance are reset on every call and can leak between threads,
+     * use {@link OpenbravoClient} instead
+     */
+    @Deprecated
     public static synchronized OpenbravoService getInstance() {
         if (instance == null) instance = new OpenbravoService();
 
@@ -49,14 +98,15 @@ public class OpenbravoService {
         instance.cutCircuit = false;
         instance.ignoreCertificateError = false;
         instance.noFilterActive = false;
+        instance.noCount = false;
+        instance.requestCompression = false;
+        instance.compressionThreshold = RestService.DEFAULT_COMPRESSION_THRESHOLD;
 
         return instance;
     }
 
     public Map<String, Object> delete(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nonnull String recordId, @Nonnull String username, @Nonnull String password) throws OpenbravoClientException {
-        try (RestService restService = RestService.getInstance()) {
-
-            restService.setIgnoreCertificate(ignoreCertificateError);
+        try (RestService restService = getRestService()) {
 
             final StringBuilder url = new StringBuilder()
                     .append(baseUrl)
@@ -74,7 +124,7 @@ public class OpenbravoService {
 
                 final int statusCode = restService.getResponseStatus(response);
                 if (restService.getStatusGroupCode(statusCode) != 200) {
-                    throw new RestClientException("Response code [" + statusCode + "] is not 200 (Success) url [" + url + "]");
+                    throw new RestClientException("Response code [" + statusCode + "] is not 200 (Success) url [" + url + "]", statusCode);
                 } else if (statusCode != 200) {
                     logger.warning("Response code [" + statusCode + "] is considered as success");
                 }
@@ -92,7 +142,9 @@ public class OpenbravoService {
 
                     final int status = jsonResponse.optInt("status", -1);
                     if (status != 0) {
-                        throw new OpenbravoClientException(responsePayload);
+                        throw jsonResponse.has("status")
+                                ? new OpenbravoClientException(responsePayload, getResponseException(jsonResponse))
+                                : new OpenbravoClientException(responsePayload);
                     }
 
                     final JSONObject jsonData = jsonResponse.getJSONObject("data");
@@ -114,9 +166,7 @@ public class OpenbravoService {
 
     @Nonnull
     public Map<String, Object> get(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nonnull String recordId) throws OpenbravoClientException {
-        try (RestService restService = RestService.getInstance()) {
-
-            restService.setIgnoreCertificate(ignoreCertificateError);
+        try (RestService restService = getRestService()) {
 
             final StringBuilder url = new StringBuilder()
                     .append(baseUrl)
@@ -134,7 +184,7 @@ public class OpenbravoService {
 
                 final int statusCode = restService.getResponseStatus(response);
                 if (restService.getStatusGroupCode(statusCode) != 200) {
-                    throw new RestClientException("Response code [" + statusCode + "] is not 200 (Success) url [" + url + "]");
+                    throw new RestClientException("Response code [" + statusCode + "] is not 200 (Success) url [" + url + "]", statusCode);
                 } else if (statusCode != 200) {
                     logger.warning("Response code [" + statusCode + "] is considered as success");
                 }
@@ -152,7 +202,9 @@ public class OpenbravoService {
 
                     final int status = jsonResponse.optInt("status", -1);
                     if (status != 0) {
-                        throw new OpenbravoClientException(responsePayload);
+                        throw jsonResponse.has("status")
+                                ? new OpenbravoClientException(responsePayload, getResponseException(jsonResponse))
+                                : new OpenbravoClientException(responsePayload);
                     }
 
                     final JSONObject jsonData = jsonResponse.getJSONObject("data");
@@ -247,54 +299,394 @@ public class OpenbravoService {
      * @throws OpenbravoClientException
      */
     public Map<String, Object>[] get(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nullable String[] fields, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc, @Nullable Integer startRow, @Nullable Integer endRow) throws OpenbravoClientException {
-        logger.info("get : baseUrl [" + baseUrl + "] tableEntity [" + tableEntity + "] username [" + username + "]");
-
-        try (RestService restService = RestService.getInstance()) {
+        try {
+            final JSONArray jsonData = getJsonResponse(baseUrl, tableEntity, username, password, fields, condition, arguments, sort, desc, startRow, endRow)
+                    .getJSONArray("data");
+            return toRows(jsonData);
+        } catch (JSONException e) {
+            throw new OpenbravoClientException(e);
+        }
+    }
 
-            restService.setIgnoreCertificate(ignoreCertificateError);
+    /**
+     * Get every record matching condition, in pages sized by {@link PageSizeTuner}
+     *
+     * @return all records
+     * @see #forEachPage(String, String, String, String, String[], String, Object[], String, Boolean, Consumer)
+     */
+    public Map<String, Object>[] getAll(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nullable String[] fields, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc) throws OpenbravoClientException {
+        final List<Map<String, Object>> result = new ArrayList<>();
+        forEachPage(baseUrl, tableEntity, username, password, fields, condition, arguments, sort, desc, page -> result.addAll(Arrays.asList(page)));
+        return toRowArray(result);
+    }
 
-            final StringBuilder url = new StringBuilder()
-                    .append(baseUrl)
-                    .append("/org.openbravo.service.json.jsonrest/")
-                    .append(tableEntity);
+    /**
+     * Get every record matching condition, like {@link #getAll(String, String, String, String, String[], String, Object[], String, Boolean)},
+     * into a result that moves rows to a temporary file once their estimated heap size exceeds the budget.
+     * The result has to be closed to delete the file.
+     *
+     * @param heapBudget estimated bytes of rows kept in heap
+     * @return all records
+     */
+    public SpillableResult getAll(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nullable String[] fields, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc, long heapBudget) throws OpenbravoClientException {
+        final SpillableResult result = new SpillableResult(heapBudget);
+        try {
+            forEachPage(baseUrl, tableEntity, username, password, fields, condition, arguments, sort, desc, result::addAll);
+            return result;
+        } catch (OpenbravoClientException e) {
+            closeQuietly(result);
+            throw e;
+        } catch (UncheckedIOException e) {
+            closeQuietly(result);
+            throw new OpenbravoClientException(e.getCause());
+        } catch (RuntimeException e) {
+            closeQuietly(result);
+            throw e;
+        }
+    }
 
-            if (fields != null && fields.length > 0) {
-                addUrlParameter(url, "_selectedProperties", String.join(",", fields));
+    /**
+     * Read every record matching condition page by page. Page size of each request comes from
+     * {@link PageSizeTuner}, which grows or shrinks it towards the target response time and size
+     * and remembers it per entity for later calls.
+     *
+     * @param baseUrl
+     * @param tableEntity
+     * @param username
+     * @param password
+     * @param fields
+     * @param condition
+     * @param arguments
+     * @param sort         pages are only consistent with a stable order, <code>id</code> when not provided
+     * @param desc
+     * @param pageConsumer called with the records of each page, in order
+     * @throws OpenbravoClientException
+     */
+    public void forEachPage(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nullable String[] fields, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc, @Nonnull Consumer<Map<String, Object>[]> pageConsumer) throws OpenbravoClientException {
+        final String orderBy = sort == null || sort.isEmpty() ? "id" : sort;
+
+        int startRow = 0;
+        while (true) {
+            final int pageSize = pageSizeTuner.getPageSize(tableEntity);
+            final int endRow = startRow + pageSize - 1;
+
+            // total rows is only worth counting once, later pages skip the count query
+            final boolean counted = !noCount && startRow == 0;
+            final String url = getUrl(baseUrl, tableEntity, fields, condition, arguments, orderBy, desc, startRow, endRow, !counted);
+
+            final long[] bytes = {0};
+            final long start = System.currentTimeMillis();
+            final JSONArray jsonData;
+            try {
+                final JSONObject jsonResponse = getJsonResponse(url, username, password, length -> bytes[0] = length);
+                jsonData = jsonResponse.getJSONArray("data");
+
+                if (startRow == 0 && jsonResponse.has("totalRows")) {
+                    logger.info("forEachPage : tableEntity [" + tableEntity + "] totalRows [" + jsonResponse.getInt("totalRows") + "]");
+                }
+            } catch (JSONException e) {
+                throw new OpenbravoClientException(e);
             }
 
-            if (noFilterActive) {
-                addUrlParameter(url, "_noActiveFilter", "true");
+            final int rows = jsonData.length();
+            // latency of the counted page includes the count query, it would skew the overhead estimate
+            if (!counted) {
+                pageSizeTuner.record(tableEntity, pageSize, rows, System.currentTimeMillis() - start, bytes[0]);
             }
 
-            if (startRow != null) {
-                addUrlParameter(url, "_startRow", startRow.toString());
+            if (rows > 0) {
+                pageConsumer.accept(toRows(jsonData));
             }
 
-            if (endRow != null) {
-                addUrlParameter(url, "_endRow", endRow.toString());
+            if (rows < pageSize) {
+                break;
             }
 
-            if (condition != null && !condition.isEmpty()) {
-                final String where = arguments == null ? condition : formatArguments(condition, arguments);
-                addUrlParameter(url, "_where", URLEncoder.encode(where));
+            startRow += rows;
+        }
+    }
+
+    /**
+     * Same as {@link #get(String, String, String, String, String[], String, Object[], String, Boolean, Integer, Integer)},
+     * but rows are stored column by column instead of one {@link Map} per row
+     *
+     * @param baseUrl
+     * @param tableEntity
+     * @param username
+     * @param password
+     * @param fields      when provided, used as the column schema
+     * @param condition
+     * @param arguments
+     * @param sort
+     * @param desc
+     * @param startRow
+     * @param endRow
+     * @return
+     * @throws OpenbravoClientException
+     */
+    public ColumnarResult getColumnar(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nullable String[] fields, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc, @Nullable Integer startRow, @Nullable Integer endRow) throws OpenbravoClientException {
+        logger.info("getColumnar : baseUrl [" + baseUrl + "] tableEntity [" + tableEntity + "] username [" + username + "]");
+
+        final String url = getUrl(baseUrl, tableEntity, fields, condition, arguments, sort, desc, startRow, endRow);
+        try (RestService restService = getRestService()) {
+
+            final Map<String, String> headers = Collections.singletonMap("Authorization", restService.getBasicAuthenticationHeader(username, password));
+            try (CloseableHttpResponse response = restService.doGet(url, headers)) {
+
+                final int statusCode = restService.getResponseStatus(response);
+                if (restService.getStatusGroupCode(statusCode) != 200) {
+                    throw new RestClientException("Response code [" + statusCode + "] is not 200 (Success) url [" + url + "]", statusCode);
+                } else if (statusCode != 200) {
+                    logger.warning("Response code [" + statusCode + "] is considered as success");
+                }
+
+                if (!restService.isJsonResponse(response)) {
+                    throw new RestClientException("Content type is not JSON");
+                }
+
+                // rows go into the columns as they are parsed, the payload and the data array are never held whole
+                final ColumnarResult.Builder builder = ColumnarResult.builder(fields == null ? new String[0] : fields);
+                try (Reader reader = new BufferedReader(new InputStreamReader(response.getEntity().getContent(), StandardCharsets.UTF_8))) {
+                    final JSONObject jsonResponse = readResponse(new JSONTokener(reader), builder::add);
+
+                    final int status = jsonResponse.optInt("status", -1);
+                    if (status != 0) {
+                        throw new OpenbravoClientException(jsonResponse.toString());
+                    }
+                }
+                return builder.build();
             }
+        } catch (RestClientException | JSONException | IOException e) {
+            throw new OpenbravoClientException(e);
+        }
+    }
 
-            if (sort != null && !sort.isEmpty()) {
-                if (desc != null && desc) {
-                    sort += " desc";
+    /**
+     * Read <code>{"response": {...}}</code> from tokener, rows of <code>data</code> are passed to rowConsumer one
+     * at a time as they are parsed instead of being collected into a {@link JSONArray}
+     *
+     * @return content of <code>response</code> without <code>data</code>, status not verified
+     */
+    @Nonnull
+    protected JSONObject readResponse(@Nonnull JSONTokener tokener, @Nonnull Consumer<JSONObject> rowConsumer) throws JSONException {
+        JSONObject jsonResponse = null;
+
+        nextToken(tokener, '{');
+        if (!isEmpty(tokener, '}')) {
+            do {
+                final String key = nextKey(tokener);
+                if (!"response".equals(key)) {
+                    tokener.nextValue();
+                    continue;
                 }
-                addUrlParameter(url, "_orderBy", URLEncoder.encode(sort.replaceAll("\\$", ".")));
+
+                jsonResponse = new JSONObject();
+                nextToken(tokener, '{');
+                if (isEmpty(tokener, '}')) continue;
+
+                do {
+                    final String responseKey = nextKey(tokener);
+                    if ("data".equals(responseKey) && tokener.nextClean() == '[') {
+                        if (isEmpty(tokener, ']')) continue;
+                        do {
+                            final Object row = tokener.nextValue();
+                            if (!(row instanceof JSONObject)) {
+                                throw tokener.syntaxError("Row is not an object");
+                            }
+                            rowConsumer.accept((JSONObject) row);
+                        } while (hasNext(tokener, ']'));
+                    } else {
+                        if ("data".equals(responseKey)) tokener.back();
+                        jsonResponse.put(responseKey, tokener.nextValue());
+                    }
+                } while (hasNext(tokener, '}'));
+            } while (hasNext(tokener, '}'));
+        }
+
+        if (jsonResponse == null) {
+            throw tokener.syntaxError("Missing response");
+        }
+        return jsonResponse;
+    }
+
+    private static void nextToken(JSONTokener tokener, char expected) throws JSONException {
+        if (tokener.nextClean() != expected) {
+            throw tokener.syntaxError("Expected '" + expected + "'");
+        }
+    }
+
+    private static String nextKey(JSONTokener tokener) throws JSONException {
+        final char quote = tokener.nextClean();
+        if (quote != '"' && quote != '\'') {
+            throw tokener.syntaxError("Expected key");
+        }
+        final String key = tokener.nextString(quote);
+        nextToken(tokener, ':');
+        return key;
+    }
+
+    /**
+     * @return true if the object or array is closed right away
+     */
+    private static boolean isEmpty(JSONTokener tokener, char close) throws JSONException {
+        if (tokener.nextClean() == close) return true;
+        tokener.back();
+        return false;
+    }
+
+    /**
+     * @return true if another member follows, false if the object or array is closed
+     */
+    private static boolean hasNext(JSONTokener tokener, char close) throws JSONException {
+        final char c = tokener.nextClean();
+        if (c == ',') return true;
+        if (c == close) return false;
+        throw tokener.syntaxError("Expected ',' or '" + close + "'");
+    }
+
+    public <T> long count(@Nonnull Class<T> clazz, @Nonnull String baseUrl, @Nonnull String username, @Nonnull String password, @Nullable String condition, Object[] arguments) throws OpenbravoClientException {
+        return count(baseUrl, getTableEntity(clazz), username, password, condition, arguments);
+    }
+
+    /**
+     * Count records matching condition without fetching them. Openbravo is asked for the count only;
+     * the row window is also limited to the id of the first record in case the count-only
+     * parameter is not supported by the server.
+     *
+     * @param baseUrl
+     * @param tableEntity
+     * @param username
+     * @param password
+     * @param condition
+     * @param arguments
+     * @return number of records
+     * @throws OpenbravoClientException
+     */
+    public long count(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nullable String condition, Object[] arguments) throws OpenbravoClientException {
+        logger.info("count : baseUrl [" + baseUrl + "] tableEntity [" + tableEntity + "] username [" + username + "]");
+
+        final StringBuilder url = new StringBuilder(getUrl(baseUrl, tableEntity, new String[]{"id"}, condition, arguments, null, null, 0, 0, false));
+        addUrlParameter(url, "_onlyCount", "true");
+
+        try {
+            final JSONObject jsonResponse = getJsonResponse(url.toString(), username, password, null);
+            if (!jsonResponse.has("totalRows")) {
+                throw new OpenbravoClientException("Response has no totalRows");
             }
+            return jsonResponse.getLong("totalRows");
+        } catch (JSONException e) {
+            throw new OpenbravoClientException(e);
+        }
+    }
+
+    /**
+     * Count on a node selected by the read strategy of the cluster
+     */
+    public long count(@Nonnull OpenbravoCluster cluster, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nullable String condition, Object[] arguments) throws OpenbravoClientException {
+        return cluster.read("count:" + tableEntity, baseUrl -> count(baseUrl, tableEntity, username, password, condition, arguments));
+    }
+
+    private void closeQuietly(@Nonnull SpillableResult result) {
+        try {
+            result.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, e.getMessage(), e);
+        }
+    }
+
+    protected Map<String, Object>[] toRows(@Nonnull JSONArray jsonData) {
+        return toRowArray(JSONStream.of(jsonData, Try.onBiFunction(JSONArray::getJSONObject))
+                .map(json -> JSONStream.of(json, Try.onBiFunction(JSONObject::get))
+                        .collect(Collectors.toMap(JSONObjectEntry::getKey, JSONObjectEntry::getValue)))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Generic arrays can only be created with an unchecked cast, every array of rows goes through here
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object>[] toRowArray(@Nonnull Collection<? extends Map<String, Object>> rows) {
+        return rows.toArray((Map<String, Object>[]) new Map<?, ?>[0]);
+    }
+
+    /**
+     * @return content of <code>response</code>, status already verified
+     */
+    @Nonnull
+    protected JSONObject getJsonResponse(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nullable String[] fields, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc, @Nullable Integer startRow, @Nullable Integer endRow) throws OpenbravoClientException {
+        logger.info("get : baseUrl [" + baseUrl + "] tableEntity [" + tableEntity + "] username [" + username + "]");
+
+        final String url = getUrl(baseUrl, tableEntity, fields, condition, arguments, sort, desc, startRow, endRow);
+        return getJsonResponse(url, username, password, null);
+    }
+
+    @Nonnull
+    protected String getUrl(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nullable String[] fields, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc, @Nullable Integer startRow, @Nullable Integer endRow) {
+        return getUrl(baseUrl, tableEntity, fields, condition, arguments, sort, desc, startRow, endRow, noCount);
+    }
+
+    /**
+     * @param noCount do not let Openbravo count total rows, <code>totalRows</code> of the response is then meaningless
+     */
+    @Nonnull
+    protected String getUrl(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nullable String[] fields, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc, @Nullable Integer startRow, @Nullable Integer endRow, boolean noCount) {
+        final StringBuilder url = new StringBuilder()
+                .append(baseUrl)
+                .append("/org.openbravo.service.json.jsonrest/")
+                .append(tableEntity);
+
+        if (fields != null && fields.length > 0) {
+            addUrlParameter(url, "_selectedProperties", String.join(",", fields));
+        }
+
+        if (noFilterActive) {
+            addUrlParameter(url, "_noActiveFilter", "true");
+        }
+
+        if (startRow != null) {
+            addUrlParameter(url, "_startRow", startRow.toString());
+        }
+
+        if (endRow != null) {
+            addUrlParameter(url, "_endRow", endRow.toString());
+        }
+
+        if (noCount) {
+            addUrlParameter(url, "_noCount", "true");
+        }
+
+        if (condition != null && !condition.isEmpty()) {
+            final String where = arguments == null ? condition : formatArguments(condition, arguments);
+            addUrlParameter(url, "_where", URLEncoder.encode(where));
+        }
+
+        if (sort != null && !sort.isEmpty()) {
+            if (desc != null && desc) {
+                sort += " desc";
+            }
+            addUrlParameter(url, "_orderBy", URLEncoder.encode(sort.replaceAll("\\$", ".")));
+        }
+
+        return url.toString();
+    }
+
+    /**
+     * @param payloadLength receives the size of the response payload in bytes, optional
+     * @return content of <code>response</code>, status already verified
+     */
+    @Nonnull
+    protected JSONObject getJsonResponse(@Nonnull String url, @Nonnull String username, @Nonnull String password, @Nullable LongConsumer payloadLength) throws OpenbravoClientException {
+        try (RestService restService = getRestService()) {
 
             final Map<String, String> headers = Collections.singletonMap("Authorization", restService.getBasicAuthenticationHeader(username, password));
-            try (CloseableHttpResponse response = restService.doGet(url.toString(), headers)) {
+            try (CloseableHttpResponse response = restService.doGet(url, headers)) {
 
                 try (BufferedReader br = new BufferedReader(new InputStreamReader(response.getEntity().getContent()))) {
                     final String responsePayload = br.lines().collect(Collectors.joining());
 
                     final int statusCode = restService.getResponseStatus(response);
                     if (restService.getStatusGroupCode(statusCode) != 200) {
-                        throw new RestClientException("Response code [" + statusCode + "] is not 200 (Success) url [" + url + "]");
+                        throw new RestClientException("Response code [" + statusCode + "] is not 200 (Success) url [" + url + "]", statusCode);
                     } else if (statusCode != 200) {
                         logger.warning("Response code [" + statusCode + "] is considered as success");
                     }
@@ -303,6 +695,13 @@ public class OpenbravoService {
                         throw new RestClientException("Content type is not JSON");
                     }
 
+                    if (payloadLength != null) {
+                        final HttpEntity entity = response.getEntity();
+                        payloadLength.accept(entity instanceof MeteredEntity.Response
+                                ? ((MeteredEntity.Response) entity).getContentBytes()
+                                : responsePayload.getBytes(StandardCharsets.UTF_8).length);
+                    }
+
                     final JSONObject jsonResponse = new JSONObject(responsePayload)
                             .getJSONObject("response");
 
@@ -311,11 +710,7 @@ public class OpenbravoService {
                         throw new OpenbravoClientException(responsePayload);
                     }
 
-                    final JSONArray jsonData = jsonResponse.getJSONArray("data");
-                    return JSONStream.of(jsonData, Try.onBiFunction(JSONArray::getJSONObject))
-                            .map(json -> JSONStream.of(json, Try.onBiFunction(JSONObject::get))
-                                    .collect(Collectors.toMap(JSONObjectEntry::getKey, JSONObjectEntry::getValue)))
-                            .toArray(Map[]::new);
+                    return jsonResponse;
                 }
             }
         } catch (RestClientException | JSONException | IOException e) {
@@ -323,6 +718,16 @@ public class OpenbravoService {
         }
     }
 
+    /**
+     * @param jsonResponse <code>response</code> object with a status other than 0
+     * @return error returned by Openbravo
+     */
+    @Nonnull
+    protected OpenbravoGetResponseException getResponseException(@Nonnull JSONObject jsonResponse) throws JSONException {
+        final JSONObject jsonError = Optional.ofNullable(jsonResponse.optJSONObject("error")).orElseGet(JSONObject::new);
+        return new OpenbravoGetResponseException(jsonResponse.getInt("status"), jsonError.optString("message"), jsonError.optString("messageType"), jsonError.optString("title"));
+    }
+
     protected String formatArguments(String condition, Object[] arguments) {
         final Pattern p = Pattern.compile("\\?");
         final Matcher m = p.matcher(condition);
@@ -357,10 +762,9 @@ public class OpenbravoService {
         return String.format(sb.toString(), args.toArray(new Object[0]));
     }
 
-    public synchronized Map<String, Object>[] post(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nonnull Map<String, Object>[] rows) throws OpenbravoClientException {
-        try (RestService restService = RestService.getInstance()) {
-
-            restService.setIgnoreCertificate(ignoreCertificateError);
+    public Map<String, Object>[] post(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nonnull Map<String, Object>[] rows) throws OpenbravoClientException {
+        postLock.lock();
+        try (RestService restService = getRestService()) {
 
             final StringBuilder url = new StringBuilder().append(baseUrl).append("/org.openbravo.service.json.jsonrest/").append(tableEntity);
             final Map<String, String> headers = Collections.singletonMap("Authorization", restService.getBasicAuthenticationHeader(username, password));
@@ -381,7 +785,7 @@ public class OpenbravoService {
 
                                 final int statusCode = restService.getResponseStatus(response);
                                 if (restService.getStatusGroupCode(statusCode) != 200) {
-                                    throw new RestClientException("Response code [" + statusCode + "] is not 200 (Success) url [" + url + "]");
+                                    throw new RestClientException("Response code [" + statusCode + "] is not 200 (Success) url [" + url + "]", statusCode);
                                 } else if (statusCode != 200) {
                                     logger.warning("Response code [" + statusCode + "] is considered as success");
                                 }
@@ -448,9 +852,229 @@ public class OpenbravoService {
             return (Map<String, Object>[]) result;
         } catch (RestClientException | IOException e) {
             throw new OpenbravoClientException(e);
+        } finally {
+            postLock.unlock();
         }
     }
 
+    public Map<String, Object>[] postBatch(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nonnull Map<String, Object>[] rows) throws OpenbravoClientException {
+        return postBatch(baseUrl, tableEntity, username, password, Arrays.asList(rows).iterator());
+    }
+
+    /**
+     * Create records in a single request. Unlike {@link #post(String, String, String, String, Map[])}, the
+     * request body is streamed from rows as it is being sent, so large batches are written in constant memory.
+     * Openbravo processes the whole batch in one transaction, one invalid row fails the entire request.
+     *
+     * @param baseUrl
+     * @param tableEntity
+     * @param username
+     * @param password
+     * @param rows        rows to create, consumed once while the request is sent
+     * @return created records as returned by Openbravo
+     * @throws OpenbravoClientException
+     */
+    public Map<String, Object>[] postBatch(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nonnull Iterator<Map<String, Object>> rows) throws OpenbravoClientException {
+        try (RestService restService = getRestService()) {
+
+            final StringBuilder url = new StringBuilder().append(baseUrl).append("/org.openbravo.service.json.jsonrest/").append(tableEntity);
+            final Map<String, String> headers = Collections.singletonMap("Authorization", restService.getBasicAuthenticationHeader(username, password));
+
+            try (CloseableHttpResponse response = restService.doPost(url.toString(), headers, new JsonStreamEntity(rows))) {
+
+                final int statusCode = restService.getResponseStatus(response);
+                if (restService.getStatusGroupCode(statusCode) != 200) {
+                    throw new RestClientException("Response code [" + statusCode + "] is not 200 (Success) url [" + url + "]", statusCode);
+                } else if (statusCode != 200) {
+                    logger.warning("Response code [" + statusCode + "] is considered as success");
+                }
+
+                if (!restService.isJsonResponse(response)) {
+                    throw new RestClientException("Content type is not JSON");
+                }
+
+                try (BufferedReader br = new BufferedReader(new InputStreamReader(response.getEntity().getContent()))) {
+                    final String responsePayload = br.lines().collect(Collectors.joining());
+                    final JSONObject jsonResponse = new JSONObject(responsePayload)
+                            .getJSONObject("response");
+
+                    final int status = jsonResponse.getInt("status");
+                    if (status != 0) {
+                        if (status == -4) {
+                            final JSONObject jsonErrors = jsonResponse.getJSONObject("errors");
+                            final Map<String, String> errors = JSONStream.of(jsonErrors, Try.onBiFunction(JSONObject::getString))
+                                    .collect(Collectors.toUnmodifiableMap(JSONObjectEntry::getKey, JSONObjectEntry::getValue));
+                            throw new OpenbravoClientException(new OpenbravoCreateRecordException(errors));
+                        } else if (status == -1) {
+                            throw new OpenbravoClientException(jsonResponse.getJSONObject("error").getString("message"), getResponseException(jsonResponse));
+                        } else {
+                            throw new OpenbravoClientException(responsePayload, getResponseException(jsonResponse));
+                        }
+                    }
+
+                    final JSONArray jsonData = jsonResponse.getJSONArray("data");
+                    return toRowArray(JSONStream.of(jsonData, Try.onBiFunction(JSONArray::getJSONObject))
+                            .map(json -> JSONStream.of(json, Try.onBiFunction(JSONObject::get))
+                                    .collect(Collectors.toUnmodifiableMap(JSONObjectEntry::getKey, JSONObjectEntry::getValue)))
+                            .collect(Collectors.toList()));
+                }
+            }
+        } catch (RestClientException | JSONException | IOException e) {
+            throw new OpenbravoClientException(e);
+        }
+    }
+
+    /**
+     * Get records by id, one request per record with at most maxConcurrency requests in flight.
+     * On JDK 21 and later every request runs on its own virtual thread.
+     *
+     * @param baseUrl
+     * @param tableEntity
+     * @param username
+     * @param password
+     * @param recordIds
+     * @param maxConcurrency maximum number of requests in flight
+     * @return records in the order of recordIds
+     * @throws OpenbravoClientException on the first record that cannot be read
+     */
+    public Map<String, Object>[] getParallel(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nonnull String[] recordIds, int maxConcurrency) throws OpenbravoClientException {
+        return toRowArray(runBulk("openbravo-get", Arrays.asList(recordIds), maxConcurrency,
+                (service, recordId) -> service.get(baseUrl, tableEntity, username, password, recordId)));
+    }
+
+    /**
+     * Create records like {@link #post(String, String, String, String, Map[])}, one request per row, but with
+     * up to maxConcurrency requests in flight. On JDK 21 and later every request runs on its own virtual thread.
+     * With short circuit, the first failed row stops sending further rows; rows already created are kept.
+     *
+     * @param baseUrl
+     * @param tableEntity
+     * @param username
+     * @param password
+     * @param rows
+     * @param maxConcurrency maximum number of requests in flight
+     * @return created records in the order of rows, empty for rows that failed
+     * @throws OpenbravoClientException
+     */
+    public Map<String, Object>[] postParallel(@Nonnull String baseUrl, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nonnull Map<String, Object>[] rows, int maxConcurrency) throws OpenbravoClientException {
+        return toRowArray(runBulk("openbravo-post", Arrays.asList(rows), maxConcurrency,
+                (service, row) -> service.post(baseUrl, tableEntity, username, password, toRowArray(Collections.singletonList(row)))[0]));
+    }
+
+    /**
+     * Delete on the write node of the cluster
+     */
+    public Map<String, Object> delete(@Nonnull OpenbravoCluster cluster, @Nonnull String tableEntity, @Nonnull String recordId, @Nonnull String username, @Nonnull String password) throws OpenbravoClientException {
+        return cluster.write(baseUrl -> delete(baseUrl, tableEntity, recordId, username, password));
+    }
+
+    /**
+     * Get on a node selected by the read strategy of the cluster
+     */
+    @Nonnull
+    public Map<String, Object> get(@Nonnull OpenbravoCluster cluster, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nonnull String recordId) throws OpenbravoClientException {
+        return cluster.read("get-id:" + tableEntity, baseUrl -> get(baseUrl, tableEntity, username, password, recordId));
+    }
+
+    /**
+     * Get on a node selected by the read strategy of the cluster
+     */
+    public Map<String, Object>[] get(@Nonnull OpenbravoCluster cluster, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nullable String[] fields, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc, @Nullable Integer startRow, @Nullable Integer endRow) throws OpenbravoClientException {
+        return cluster.read("get:" + tableEntity, baseUrl -> get(baseUrl, tableEntity, username, password, fields, condition, arguments, sort, desc, startRow, endRow));
+    }
+
+    /**
+     * Get on a node selected by the read strategy of the cluster
+     */
+    public ColumnarResult getColumnar(@Nonnull OpenbravoCluster cluster, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nullable String[] fields, @Nullable String condition, Object[] arguments, @Nullable String sort, @Nullable Boolean desc, @Nullable Integer startRow, @Nullable Integer endRow) throws OpenbravoClientException {
+        return cluster.read("get:" + tableEntity, baseUrl -> getColumnar(baseUrl, tableEntity, username, password, fields, condition, arguments, sort, desc, startRow, endRow));
+    }
+
+    /**
+     * Post on the write node of the cluster
+     */
+    public Map<String, Object>[] post(@Nonnull OpenbravoCluster cluster, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nonnull Map<String, Object>[] rows) throws OpenbravoClientException {
+        return cluster.write(baseUrl -> post(baseUrl, tableEntity, username, password, rows));
+    }
+
+    /**
+     * Post batch on the write node of the cluster
+     */
+    public Map<String, Object>[] postBatch(@Nonnull OpenbravoCluster cluster, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nonnull Iterator<Map<String, Object>> rows) throws OpenbravoClientException {
+        return cluster.write(baseUrl -> postBatch(baseUrl, tableEntity, username, password, rows));
+    }
+
+    /**
+     * Get records by id in parallel, every record is read from a node chosen by the cluster
+     */
+    public Map<String, Object>[] getParallel(@Nonnull OpenbravoCluster cluster, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nonnull String[] recordIds, int maxConcurrency) throws OpenbravoClientException {
+        return toRowArray(runBulk("openbravo-get", Arrays.asList(recordIds), maxConcurrency,
+                (service, recordId) -> cluster.read("get-id:" + tableEntity, baseUrl -> service.get(baseUrl, tableEntity, username, password, recordId))));
+    }
+
+    /**
+     * Post rows in parallel on the write node of the cluster
+     */
+    public Map<String, Object>[] postParallel(@Nonnull OpenbravoCluster cluster, @Nonnull String tableEntity, @Nonnull String username, @Nonnull String password, @Nonnull Map<String, Object>[] rows, int maxConcurrency) throws OpenbravoClientException {
+        return toRowArray(runBulk("openbravo-post", Arrays.asList(rows), maxConcurrency,
+                (service, row) -> cluster.write(baseUrl -> service.post(baseUrl, tableEntity, username, password, toRowArray(Collections.singletonList(row)))[0])));
+    }
+
+    protected RestService getRestService() throws RestClientException {
+        if (sharedRestService != null) {
+            return sharedRestService;
+        }
+
+        final RestService restService = RestService.getInstance();
+        configureRestService(restService);
+        return restService;
+    }
+
+    /**
+     * Run a call per item through {@link BulkExecutor}. Every call gets its own service with the flags of this
+     * one, bound to a rest service that is not closed between calls: the pooled one of {@link OpenbravoClient},
+     * or otherwise a pool of maxConcurrency connections kept for the duration of the bulk operation.
+     */
+    protected <T, R> List<R> runBulk(@Nonnull String name, @Nonnull List<T> items, int maxConcurrency, @Nonnull BulkCall<T, R> call) throws OpenbravoClientException {
+        final RestService bulkRestService;
+        if (sharedRestService != null) {
+            bulkRestService = sharedRestService;
+        } else {
+            try {
+                // no timeouts, same as the singleton rest service
+                bulkRestService = RestService.createShared(ignoreCertificateError, maxConcurrency, maxConcurrency, Duration.ZERO, Duration.ZERO, Duration.ZERO);
+                configureRestService(bulkRestService);
+            } catch (RestClientException e) {
+                throw new OpenbravoClientException(e);
+            }
+        }
+
+        final CallOptions options = CallOptions.DEFAULT
+                .withShortCircuit(shortCircuit)
+                .withNoFilterActive(noFilterActive)
+                .withNoCount(noCount);
+
+        try {
+            return BulkExecutor.invokeAll(name, items, maxConcurrency,
+                    item -> call.call(new OpenbravoService(bulkRestService, transferMetrics, pageSizeTuner, options), item));
+        } finally {
+            if (bulkRestService != sharedRestService) {
+                try {
+                    bulkRestService.shutdown();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    protected void configureRestService(@Nonnull RestService restService) {
+        restService.setIgnoreCertificate(ignoreCertificateError);
+        restService.setRequestCompression(requestCompression);
+        restService.setCompressionThreshold(compressionThreshold);
+        restService.setTransferMetrics(transferMetrics);
+    }
+
     protected void addUrlParameter(@Nonnull final StringBuilder url, String parameterName, String parameterValue) {
         url.append(String.format("%s%s=%s", (url.toString().contains("?") ? "&" : "?"), parameterName, parameterValue));
     }
@@ -459,6 +1083,36 @@ public class OpenbravoService {
         this.ignoreCertificateError = ignoreCertificateError;
     }
 
+    /**
+     * Gzip post request bodies larger than the compression threshold. The Openbravo server, or a
+     * reverse proxy in front of it, must decode request Content-Encoding.
+     */
+    public void setRequestCompression(boolean requestCompression) {
+        this.requestCompression = requestCompression;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * @return raw vs wire bytes per entity of every request made by this service
+     */
+    public TransferMetrics getTransferMetrics() {
+        return transferMetrics;
+    }
+
+    /**
+     * Tuned page sizes are kept across calls, replace to use different targets or limits
+     */
+    public void setPageSizeTuner(@Nonnull PageSizeTuner pageSizeTuner) {
+        this.pageSizeTuner = pageSizeTuner;
+    }
+
+    public PageSizeTuner getPageSizeTuner() {
+        return pageSizeTuner;
+    }
+
     public void setShortCircuit(boolean shortCircuit) {
         this.shortCircuit = shortCircuit;
     }
@@ -467,6 +1121,13 @@ public class OpenbravoService {
         this.noFilterActive = noFilterActive;
     }
 
+    /**
+     * Skip counting total rows on get, which costs Openbravo an extra count query per request
+     */
+    public void setNoCount(boolean noCount) {
+        this.noCount = noCount;
+    }
+
     protected String getFilterWhereCondition(Map<String, String> filter) {
         return Optional.ofNullable(filter)
                 .map(Map::entrySet)
@@ -504,4 +1165,10 @@ public class OpenbravoService {
                 .toArray(String[]::new);
     }
 
+    /**
+     * Call of a bulk operation on a single item
+     */
+    protected interface BulkCall<T, R> {
+        R call(OpenbravoService service, T item) throws OpenbravoClientException;
+    }
 }
@@ -0,0 +1,152 @@
+package com.kinnarastudio.obclient.service;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Page size per entity for paged reads, tuned from the latency and size of previous pages.
+ * <p>
+ * Latency of a page is modelled as a fixed per-request overhead plus a cost per row, fitted over recent
+ * pages of different sizes, and bytes per row are averaged over the same pages. The next page size is the
+ * number of rows expected to reach either the target response time or the target response size, whichever
+ * comes first. A page never grows or shrinks by more than a factor of two at once and stays within the
+ * configured limits.
+ * <p>
+ * Only full pages are recorded, the short last page of a scan would otherwise spread the overhead over a
+ * few rows and shrink the page size after every scan.
+ */
+public class PageSizeTuner {
+    private final static double SMOOTHING = 0.3;
+
+    /**
+     * Spread of recent page sizes needed to tell overhead from cost per row
+     */
+    private final static double MIN_RELATIVE_VARIANCE = 0.01;
+
+    private final long targetLatencyMillis;
+    private final long targetBytes;
+    private final int minPageSize;
+    private final int maxPageSize;
+    private final int initialPageSize;
+
+    private final Map<String, EntityStats> entities = new ConcurrentHashMap<>();
+
+    /**
+     * Pages of about 2 seconds or 4 MiB, between 50 and 5000 rows, starting at 500
+     */
+    public PageSizeTuner() {
+        this(Duration.ofSeconds(2), 4 * 1024 * 1024, 50, 5000, 500);
+    }
+
+    public PageSizeTuner(@Nonnull Duration targetLatency, long targetBytes, int minPageSize, int maxPageSize, int initialPageSize) {
+        if (minPageSize <= 0 || minPageSize > maxPageSize) {
+            throw new IllegalArgumentException("Invalid page size limits [" + minPageSize + "] - [" + maxPageSize + "]");
+        }
+
+        this.targetLatencyMillis = targetLatency.toMillis();
+        this.targetBytes = targetBytes;
+        this.minPageSize = minPageSize;
+        this.maxPageSize = maxPageSize;
+        this.initialPageSize = clamp(initialPageSize);
+    }
+
+    /**
+     * @return page size to use for the next page of entity
+     */
+    public int getPageSize(@Nonnull String tableEntity) {
+        final EntityStats stats = entities.get(tableEntity);
+        return stats == null ? initialPageSize : stats.pageSize;
+    }
+
+    /**
+     * Record a fetched page and adjust the page size of its entity
+     *
+     * @param tableEntity
+     * @param pageSize      number of rows requested
+     * @param rows          number of rows returned, pages shorter than requested are ignored
+     * @param latencyMillis time to fetch the page
+     * @param bytes         size of the response
+     */
+    public void record(@Nonnull String tableEntity, int pageSize, int rows, long latencyMillis, long bytes) {
+        if (rows <= 0 || rows < pageSize) return;
+
+        entities.compute(tableEntity, (key, stats) -> {
+            final double latency = Math.max(1, latencyMillis);
+
+            final EntityStats updated = new EntityStats();
+            if (stats == null) {
+                updated.rows = rows;
+                updated.rowsSquared = (double) rows * rows;
+                updated.latency = latency;
+                updated.rowsLatency = rows * latency;
+                updated.bytes = Math.max(1, bytes);
+                updated.overhead = 0;
+                updated.pageSize = clamp(pageSize);
+            } else {
+                updated.rows = smooth(rows, stats.rows);
+                updated.rowsSquared = smooth((double) rows * rows, stats.rowsSquared);
+                updated.latency = smooth(latency, stats.latency);
+                updated.rowsLatency = smooth(rows * latency, stats.rowsLatency);
+                updated.bytes = smooth(Math.max(1, bytes), stats.bytes);
+                updated.overhead = stats.overhead;
+                updated.pageSize = stats.pageSize;
+            }
+
+            // least squares of latency over rows, overhead is kept from before while page sizes are all alike
+            final double variance = updated.rowsSquared - updated.rows * updated.rows;
+            if (variance > MIN_RELATIVE_VARIANCE * updated.rows * updated.rows) {
+                final double slope = (updated.rowsLatency - updated.rows * updated.latency) / variance;
+                if (slope > 0) {
+                    updated.overhead = Math.max(0, updated.latency - slope * updated.rows);
+                }
+            }
+            updated.overhead = Math.min(updated.overhead, updated.latency);
+
+            final double latencyPerRow = Math.max(updated.latency - updated.overhead, 1) / updated.rows;
+            final double bytesPerRow = updated.bytes / updated.rows;
+
+            final double ideal = Math.min(Math.max(0, targetLatencyMillis - updated.overhead) / latencyPerRow, targetBytes / bytesPerRow);
+            final double bounded = Math.max(updated.pageSize / 2.0, Math.min(updated.pageSize * 2.0, ideal));
+            updated.pageSize = clamp((int) bounded);
+            return updated;
+        });
+    }
+
+    /**
+     * @return estimated fixed cost of a request of entity in milliseconds, 0 until pages of different sizes were recorded
+     */
+    public double getOverheadMillis(@Nonnull String tableEntity) {
+        final EntityStats stats = entities.get(tableEntity);
+        return stats == null ? 0 : stats.overhead;
+    }
+
+    /**
+     * Forget tuned size of entity
+     */
+    public void reset(@Nonnull String tableEntity) {
+        entities.remove(tableEntity);
+    }
+
+    private int clamp(int pageSize) {
+        return Math.max(minPageSize, Math.min(maxPageSize, pageSize));
+    }
+
+    private static double smooth(double sample, double average) {
+        return SMOOTHING * sample + (1 - SMOOTHING) * average;
+    }
+
+    /**
+     * Smoothed averages over recent full pages
+     */
+    private static class EntityStats {
+        private double rows;
+        private double rowsSquared;
+        private double latency;
+        private double rowsLatency;
+        private double bytes;
+        private double overhead;
+        private int pageSize;
+    }
+}
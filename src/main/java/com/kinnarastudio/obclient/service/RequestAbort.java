@@ -0,0 +1,84 @@
+package com.kinnarastudio.obclient.service;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects the http requests sent by {@link RestService} on the current thread while a call runs, so the
+ * call can be cancelled from another thread. Blocking socket reads of HttpClient ignore interrupts, aborting
+ * the request is what releases its connection and stops waiting for the server.
+ */
+final class RequestAbort {
+    private final static ThreadLocal<RequestAbort> CURRENT = new ThreadLocal<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<HttpUriRequest> requests = new ArrayList<>();
+    private boolean aborted = false;
+
+    /**
+     * @return abort handle of the call running on the current thread, if any
+     */
+    @Nullable
+    static RequestAbort current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Run call on the current thread with this handle bound to it
+     */
+    <T> T run(@Nonnull Callable<T> call) throws Exception {
+        CURRENT.set(this);
+        try {
+            return call.call();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Track a request about to be sent, aborted right away when the call has already been aborted
+     */
+    void register(@Nonnull HttpUriRequest request) {
+        lock.lock();
+        try {
+            if (aborted) {
+                request.abort();
+            } else {
+                requests.add(request);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Abort every request of the call, including those registered later
+     */
+    void abort() {
+        lock.lock();
+        try {
+            aborted = true;
+            for (HttpUriRequest request : requests) {
+                request.abort();
+            }
+            requests.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isAborted() {
+        lock.lock();
+        try {
+            return aborted;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
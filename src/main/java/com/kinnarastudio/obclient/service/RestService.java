@@ -6,6 +6,7 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.*;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.entity.ContentType;
@@ -26,7 +27,9 @@ import java.io.InputStreamReader;
 import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -38,21 +41,80 @@ import java.util.stream.Collectors;
 public class RestService implements Closeable {
     public final static Logger logger = Logger.getLogger(RestService.class.getName());
 
+    public final static int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
     private static RestService instance = null;
+    private final static ReentrantLock INSTANCE_LOCK = new ReentrantLock();
 
     private boolean isDebug = false;
 
     private boolean ignoreCertificate = false;
 
+    private boolean requestCompression = false;
+
+    private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+
+    @Nullable
+    private TransferMetrics transferMetrics = null;
+
     private final CloseableHttpClient client;
 
+    /**
+     * Shared by every call of an {@link OpenbravoClient}, {@link #close()} does not close the http client
+     */
+    private final boolean shared;
+
     private RestService() throws RestClientException {
         this.client = getHttpClient();
+        this.shared = false;
     }
 
-    public static synchronized RestService getInstance() throws RestClientException {
-        if (instance == null) instance = new RestService();
-        return instance;
+    private RestService(@Nonnull CloseableHttpClient client) {
+        this.client = client;
+        this.shared = true;
+    }
+
+    /**
+     * Rest service with a connection pool, meant to be shared by many threads. Configure it
+     * before sharing, it is not modified afterwards.
+     */
+    static RestService createShared(boolean ignoreCertificate, int maxConnections, int maxConnectionsPerRoute, @Nonnull Duration connectTimeout, @Nonnull Duration socketTimeout, @Nonnull Duration connectionRequestTimeout) throws RestClientException {
+        final RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout((int) connectTimeout.toMillis())
+                .setSocketTimeout((int) socketTimeout.toMillis())
+                .setConnectionRequestTimeout((int) connectionRequestTimeout.toMillis())
+                .build();
+
+        final HttpClientBuilder builder = HttpClientBuilder.create()
+                .setDefaultRequestConfig(requestConfig)
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .disableContentCompression();
+
+        if (ignoreCertificate) {
+            try {
+                final SSLContext sslContext = new SSLContextBuilder()
+                        .loadTrustMaterial(null, (certificate, authType) -> true).build();
+                builder.setSSLContext(sslContext)
+                        .setSSLHostnameVerifier(new NoopHostnameVerifier());
+            } catch (NoSuchAlgorithmException | KeyStoreException | KeyManagementException e) {
+                throw new RestClientException(e);
+            }
+        }
+
+        final RestService restService = new RestService(builder.build());
+        restService.ignoreCertificate = ignoreCertificate;
+        return restService;
+    }
+
+    public static RestService getInstance() throws RestClientException {
+        INSTANCE_LOCK.lock();
+        try {
+            if (instance == null) instance = new RestService();
+            return instance;
+        } finally {
+            INSTANCE_LOCK.unlock();
+        }
     }
 
     protected CloseableHttpClient getHttpClient() throws RestClientException {
@@ -62,9 +124,12 @@ public class RestService implements Closeable {
                         .loadTrustMaterial(null, (certificate, authType) -> true).build();
                 return HttpClients.custom().setSSLContext(sslContext)
                         .setSSLHostnameVerifier(new NoopHostnameVerifier())
+                        .disableContentCompression()
                         .build();
             } else {
-                return HttpClientBuilder.create().build();
+                return HttpClientBuilder.create()
+                        .disableContentCompression()
+                        .build();
             }
         } catch (NoSuchAlgorithmException | KeyStoreException | KeyManagementException e) {
             throw new RestClientException(e);
@@ -104,8 +169,8 @@ public class RestService implements Closeable {
     public CloseableHttpResponse doGet(@Nonnull String url, String username, String password) throws RestClientException {
         try {
             final Map<String, String> headers = Collections.singletonMap("Authorization", getBasicAuthenticationHeader(username, password));
-            final HttpUriRequest request = getHttpRequest(url, Method.GET, headers, null);
-            return client.execute(request);
+            final HttpUriRequest request = getHttpRequest(url, Method.GET, headers, (HttpEntity) null);
+            return execute(request);
         } catch (IOException e) {
             throw new RestClientException(e);
         }
@@ -113,8 +178,8 @@ public class RestService implements Closeable {
 
     public CloseableHttpResponse doGet(@Nonnull String url, @Nonnull Map<String, String> headers) throws RestClientException {
         try {
-            final HttpUriRequest request = getHttpRequest(url, Method.GET, headers, null);
-            return client.execute(request);
+            final HttpUriRequest request = getHttpRequest(url, Method.GET, headers, (HttpEntity) null);
+            return execute(request);
         } catch (IOException e) {
             throw new RestClientException(e);
         }
@@ -124,7 +189,7 @@ public class RestService implements Closeable {
         try {
             final Map<String, String> headers = Collections.singletonMap("Authorization", getBasicAuthenticationHeader(username, password));
             final HttpUriRequest request = getHttpRequest(url, Method.POST, headers, bodyPayload);
-            return client.execute(request);
+            return execute(request);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -133,7 +198,19 @@ public class RestService implements Closeable {
     public CloseableHttpResponse doPost(@Nonnull String url, @Nonnull Map<String, String> headers, @Nullable JSONObject bodyPayload) throws RestClientException {
         try {
             final HttpUriRequest request = getHttpRequest(url, Method.POST, headers, bodyPayload);
-            return client.execute(request);
+            return execute(request);
+        } catch (IOException e) {
+            throw new RestClientException(e);
+        }
+    }
+
+    /**
+     * Post with a prepared request body, e.g. a {@link JsonStreamEntity} for large payloads
+     */
+    public CloseableHttpResponse doPost(@Nonnull String url, @Nonnull Map<String, String> headers, @Nonnull HttpEntity httpEntity) throws RestClientException {
+        try {
+            final HttpUriRequest request = getHttpRequest(url, Method.POST, headers, httpEntity);
+            return execute(request);
         } catch (IOException e) {
             throw new RestClientException(e);
         }
@@ -142,8 +219,8 @@ public class RestService implements Closeable {
     public CloseableHttpResponse doDelete(@Nonnull String url, String username, String password) throws RestClientException {
         try {
             final Map<String, String> headers = Collections.singletonMap("Authorization", getBasicAuthenticationHeader(username, password));
-            final HttpUriRequest request = getHttpRequest(url, Method.DELETE, headers, null);
-            return client.execute(request);
+            final HttpUriRequest request = getHttpRequest(url, Method.DELETE, headers, (HttpEntity) null);
+            return execute(request);
         } catch (IOException e) {
             throw new RestClientException(e);
         }
@@ -151,13 +228,35 @@ public class RestService implements Closeable {
 
     public CloseableHttpResponse doDelete(@Nonnull String url, @Nonnull Map<String, String> headers) throws RestClientException {
         try {
-            final HttpUriRequest request = getHttpRequest(url, Method.DELETE, headers, null);
-            return client.execute(request);
+            final HttpUriRequest request = getHttpRequest(url, Method.DELETE, headers, (HttpEntity) null);
+            return execute(request);
         } catch (IOException e) {
             throw new RestClientException(e);
         }
     }
 
+    /**
+     * Execute request, negotiating response compression and counting raw and wire bytes
+     * into {@link TransferMetrics} when configured
+     */
+    protected CloseableHttpResponse execute(@Nonnull HttpUriRequest request) throws IOException {
+        request.setHeader("Accept-Encoding", "gzip,deflate");
+
+        final RequestAbort requestAbort = RequestAbort.current();
+        if (requestAbort != null) {
+            requestAbort.register(request);
+        }
+
+        final CloseableHttpResponse response = client.execute(request);
+        final HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            final TransferMetrics.EntityTransfer transfer = getEntityTransfer(request.getURI().getPath());
+            response.setEntity(new MeteredEntity.Response(entity, transfer));
+        }
+
+        return response;
+    }
+
     protected HttpUriRequest getHttpRequest(@Nonnull String url, @Nonnull Method method, @Nonnull Map<String, String> headers, @Nullable JSONObject bodyPayload) throws RestClientException {
         if (isDebug) {
             logger.info("getHttpRequest : url [" + url + "] method [" + method + "] bodyPayload [" + bodyPayload + "]");
@@ -170,6 +269,14 @@ public class RestService implements Closeable {
             httpEntity = new StringEntity(bodyPayload.toString(), ContentType.APPLICATION_JSON);
         }
 
+        return getHttpRequest(url, method, headers, httpEntity);
+    }
+
+    protected HttpUriRequest getHttpRequest(@Nonnull String url, @Nonnull Method method, @Nonnull Map<String, String> headers, @Nullable HttpEntity httpEntity) throws RestClientException {
+        if (isDebug && httpEntity != null && httpEntity.isStreaming()) {
+            logger.info("getHttpRequest : url [" + url + "] method [" + method + "] streaming entity");
+        }
+
         final HttpRequestBase request;
 
         switch (method) {
@@ -191,8 +298,11 @@ public class RestService implements Closeable {
 
         headers.forEach(request::addHeader);
 
-        if (httpEntity != null) {
-            ((HttpEntityEnclosingRequestBase) request).setEntity(httpEntity);
+        if (httpEntity != null && request instanceof HttpEntityEnclosingRequestBase) {
+            final long contentLength = httpEntity.getContentLength();
+            final boolean gzip = requestCompression && (contentLength < 0 || contentLength >= compressionThreshold);
+            final TransferMetrics.EntityTransfer transfer = getEntityTransfer(request.getURI().getPath());
+            ((HttpEntityEnclosingRequestBase) request).setEntity(new MeteredEntity.Request(httpEntity, transfer, gzip));
         }
 
         return request;
@@ -206,16 +316,68 @@ public class RestService implements Closeable {
         this.ignoreCertificate = ignoreCertificate;
     }
 
+    /**
+     * Gzip request bodies, only when the server or a reverse proxy in front of it
+     * decodes Content-Encoding of requests
+     */
+    public void setRequestCompression(boolean requestCompression) {
+        this.requestCompression = requestCompression;
+    }
+
+    /**
+     * Request bodies with known length smaller than this are sent uncompressed
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public void setTransferMetrics(@Nullable TransferMetrics transferMetrics) {
+        this.transferMetrics = transferMetrics;
+    }
+
+    /**
+     * Metrics are grouped by entity, taken from the path segment after <code>jsonrest/</code>
+     */
+    protected TransferMetrics.EntityTransfer getEntityTransfer(@Nullable String path) {
+        if (transferMetrics == null) {
+            return TransferMetrics.EntityTransfer.NONE;
+        }
+
+        final String key = Optional.ofNullable(path)
+                .map(p -> {
+                    final int i = p.indexOf("jsonrest/");
+                    if (i < 0) return p;
+
+                    final String entity = p.substring(i + "jsonrest/".length());
+                    final int j = entity.indexOf('/');
+                    return j < 0 ? entity : entity.substring(0, j);
+                })
+                .orElse("");
+
+        return transferMetrics.get(key);
+    }
+
     public void setDebug(boolean debug) {
         isDebug = debug;
     }
 
     @Override
     public void close() throws IOException {
+        if (shared) {
+            return;
+        }
+
         client.close();
         instance = null;
     }
 
+    /**
+     * Close the http client of a shared rest service
+     */
+    void shutdown() throws IOException {
+        client.close();
+    }
+
     public enum Method {
         GET,
         POST,
@@ -0,0 +1,36 @@
+package com.kinnarastudio.obclient.service;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors for blocking Openbravo calls run in parallel.
+ * <p>
+ * This is the Java 11 implementation, backed by platform threads. On JDK 21 and later the multi-release
+ * jar replaces it with the implementation in <code>src/main/java21</code>, backed by virtual threads.
+ * Callers bound concurrency themselves, the executor does not limit the number of threads.
+ */
+final class TaskExecutors {
+    private TaskExecutors() {
+    }
+
+    /**
+     * @param name name of the threads
+     * @return executor starting a thread per task when no idle thread is available
+     */
+    static ExecutorService newTaskExecutor(@Nonnull String name) {
+        return Executors.newCachedThreadPool(r -> {
+            final Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return true if tasks run on virtual threads
+     */
+    static boolean isVirtual() {
+        return false;
+    }
+}
@@ -0,0 +1,115 @@
+package com.kinnarastudio.obclient.service;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Raw (uncompressed) vs wire (as transferred) bytes per entity, for both request and response bodies.
+ * Counters are updated concurrently by every request going through {@link RestService}.
+ */
+public class TransferMetrics {
+    private final Map<String, EntityTransfer> entities = new ConcurrentHashMap<>();
+
+    @Nonnull
+    public EntityTransfer get(@Nonnull String entity) {
+        return entities.computeIfAbsent(entity, EntityTransfer::new);
+    }
+
+    @Nonnull
+    public Map<String, EntityTransfer> getEntities() {
+        return Collections.unmodifiableMap(entities);
+    }
+
+    public void reset() {
+        entities.clear();
+    }
+
+    @Override
+    public String toString() {
+        return entities.values().toString();
+    }
+
+    public static class EntityTransfer {
+        /**
+         * Counts nothing, used when no metrics are configured
+         */
+        final static EntityTransfer NONE = new EntityTransfer("") {
+            @Override
+            void addRequest(long rawBytes, long wireBytes) {
+            }
+
+            @Override
+            void addResponse(long rawBytes, long wireBytes) {
+            }
+        };
+
+        private final String entity;
+        private final LongAdder requestCount = new LongAdder();
+        private final LongAdder requestRawBytes = new LongAdder();
+        private final LongAdder requestWireBytes = new LongAdder();
+        private final LongAdder responseCount = new LongAdder();
+        private final LongAdder responseRawBytes = new LongAdder();
+        private final LongAdder responseWireBytes = new LongAdder();
+
+        EntityTransfer(String entity) {
+            this.entity = entity;
+        }
+
+        void addRequest(long rawBytes, long wireBytes) {
+            requestCount.increment();
+            requestRawBytes.add(rawBytes);
+            requestWireBytes.add(wireBytes);
+        }
+
+        void addResponse(long rawBytes, long wireBytes) {
+            responseCount.increment();
+            responseRawBytes.add(rawBytes);
+            responseWireBytes.add(wireBytes);
+        }
+
+        public String getEntity() {
+            return entity;
+        }
+
+        public long getRequestCount() {
+            return requestCount.sum();
+        }
+
+        public long getRequestRawBytes() {
+            return requestRawBytes.sum();
+        }
+
+        public long getRequestWireBytes() {
+            return requestWireBytes.sum();
+        }
+
+        public long getResponseCount() {
+            return responseCount.sum();
+        }
+
+        public long getResponseRawBytes() {
+            return responseRawBytes.sum();
+        }
+
+        public long getResponseWireBytes() {
+            return responseWireBytes.sum();
+        }
+
+        /**
+         * @return bytes not sent or received thanks to compression
+         */
+        public long getSavedBytes() {
+            return getRequestRawBytes() + getResponseRawBytes() - getRequestWireBytes() - getResponseWireBytes();
+        }
+
+        @Override
+        public String toString() {
+            return "entity [" + entity + "]"
+                    + " request [" + getRequestCount() + "] raw [" + getRequestRawBytes() + "] wire [" + getRequestWireBytes() + "]"
+                    + " response [" + getResponseCount() + "] raw [" + getResponseRawBytes() + "] wire [" + getResponseWireBytes() + "]";
+        }
+    }
+}
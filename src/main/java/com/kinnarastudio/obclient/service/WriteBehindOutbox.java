@@ -0,0 +1,810 @@
+package com.kinnarastudio.obclient.service;
+
+import com.kinnarastudio.obclient.exceptions.OpenbravoClientException;
+import com.kinnarastudio.obclient.exceptions.OpenbravoCreateRecordException;
+import com.kinnarastudio.obclient.exceptions.OpenbravoGetResponseException;
+import com.kinnarastudio.obclient.exceptions.RestClientException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-behind queue in front of post and delete.
+ * <p>
+ * Operations are appended to a memory-mapped journal and forced to disk before the call returns,
+ * then sent to Openbravo by a background worker. Consecutive posts to the same entity are sent as one
+ * batch. When Openbravo cannot be reached the batch is retried with exponential backoff, operations
+ * are always delivered in the order they were appended. An operation rejected by Openbravo itself,
+ * e.g. invalid field values, is passed to the error handler and skipped; a rejected batch is first
+ * retried row by row so only the offending rows are skipped.
+ * <p>
+ * Delivery is not exactly once. Only failures where the request cannot have been applied are retried:
+ * no connection could be made, or the server answered with an error. When the request may have been
+ * applied, e.g. a read timeout or an unreadable response, it is not sent again; the operation is passed
+ * to the error handler as an {@link OutcomeUnknownException} to be reconciled. A duplicate can still
+ * happen when the process stops after Openbravo applied a batch but before it was acknowledged, or when
+ * a server error is returned for a request that was committed.
+ * <p>
+ * Only a window of pending operations is kept in heap, the rest is read back from the journal as the
+ * worker catches up, so a long outage grows the journal on disk rather than the heap. Journal segments
+ * are deleted once every operation in them is acknowledged. Operations not yet acknowledged when the
+ * JVM stops are replayed, in order, when the outbox is opened again.
+ */
+public class WriteBehindOutbox implements Closeable {
+    public final static Logger logger = Logger.getLogger(WriteBehindOutbox.class.getName());
+
+    private final static String SEGMENT_PREFIX = "segment-";
+    private final static String SEGMENT_SUFFIX = ".log";
+    private final static String CHECKPOINT_FILE = "checkpoint";
+
+    /**
+     * length, sequence, crc
+     */
+    private final static int RECORD_HEADER = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    private final Path directory;
+    private final Target target;
+    private final int segmentSize;
+    private final int batchSize;
+    private final int maxInMemory;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final BiConsumer<Operation, OpenbravoClientException> errorHandler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+
+    /**
+     * Window of the journal after the checkpoint, at most maxInMemory operations
+     */
+    private final Deque<Operation> pending = new ArrayDeque<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private final MappedByteBuffer checkpoint;
+    private final FileChannel checkpointChannel;
+    private final Thread worker;
+
+    private long nextSequence;
+    private long acknowledgedSequence;
+
+    /**
+     * Last sequence read from the journal into pending
+     */
+    private long loadedSequence;
+    private volatile boolean running = true;
+
+    private WriteBehindOutbox(Builder builder) throws IOException {
+        this.directory = builder.directory;
+        this.target = builder.target;
+        this.segmentSize = builder.segmentSize;
+        this.batchSize = builder.batchSize;
+        this.maxInMemory = builder.maxInMemory;
+        this.initialBackoffMillis = builder.initialBackoff.toMillis();
+        this.maxBackoffMillis = builder.maxBackoff.toMillis();
+        this.errorHandler = builder.errorHandler;
+
+        Files.createDirectories(directory);
+
+        this.checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        this.acknowledgedSequence = checkpoint.getLong(0);
+        this.nextSequence = acknowledgedSequence + 1;
+        this.loadedSequence = acknowledgedSequence;
+
+        replay();
+
+        this.worker = new Thread(this::flushLoop, "openbravo-outbox-flush");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public static Builder builder(@Nonnull Path directory, @Nonnull Target target) {
+        return new Builder(directory, target);
+    }
+
+    /**
+     * Queue a record to be created, durable when this method returns
+     *
+     * @return sequence of the operation
+     */
+    public long post(@Nonnull String tableEntity, @Nonnull Map<String, Object> row) throws OpenbravoClientException {
+        return append(Collections.singletonList(Operation.post(tableEntity, row)));
+    }
+
+    /**
+     * Queue records to be created, forced to disk once for all rows
+     *
+     * @return sequence of the last operation
+     */
+    public long post(@Nonnull String tableEntity, @Nonnull Map<String, Object>[] rows) throws OpenbravoClientException {
+        final List<Operation> operations = Stream.of(rows)
+                .map(row -> Operation.post(tableEntity, row))
+                .collect(Collectors.toList());
+        return append(operations);
+    }
+
+    /**
+     * Queue a record to be deleted, durable when this method returns
+     *
+     * @return sequence of the operation
+     */
+    public long delete(@Nonnull String tableEntity, @Nonnull String recordId) throws OpenbravoClientException {
+        return append(Collections.singletonList(Operation.delete(tableEntity, recordId)));
+    }
+
+    /**
+     * @return number of operations appended and not yet acknowledged
+     */
+    public long getPendingCount() {
+        lock.lock();
+        try {
+            return nextSequence - 1 - acknowledgedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAcknowledgedSequence() {
+        lock.lock();
+        try {
+            return acknowledgedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until every queued operation is acknowledged
+     *
+     * @return false if operations are still pending after timeout
+     */
+    public boolean awaitFlushed(@Nonnull Duration timeout) throws InterruptedException {
+        long remaining = timeout.toNanos();
+        lock.lock();
+        try {
+            while (acknowledgedSequence < nextSequence - 1) {
+                if (remaining <= 0) return false;
+                remaining = drained.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop the worker. Operations not yet sent stay in the journal and are replayed on next open.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        lock.lock();
+        try {
+            for (Segment segment : segments) {
+                segment.channel.close();
+            }
+            segments.clear();
+            pending.clear();
+            checkpointChannel.close();
+        } finally {
+            lock.unlock();
+            target.close();
+        }
+    }
+
+    protected long append(@Nonnull List<Operation> operations) throws OpenbravoClientException {
+        if (!running) {
+            throw new OpenbravoClientException("Outbox is closed");
+        }
+
+        lock.lock();
+        try {
+            final List<Segment> written = new ArrayList<>();
+            for (Operation operation : operations) {
+                final byte[] payload = operation.toJson().toString().getBytes(StandardCharsets.UTF_8);
+                final long sequence = nextSequence;
+
+                Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+                if (segment == null || segment.buffer.remaining() < RECORD_HEADER + payload.length + Integer.BYTES) {
+                    segment = createSegment(sequence, payload.length);
+                }
+
+                final CRC32 crc = new CRC32();
+                crc.update(payload);
+
+                segment.buffer.putInt(payload.length)
+                        .putLong(sequence)
+                        .putInt((int) crc.getValue())
+                        .put(payload);
+                segment.lastSequence = sequence;
+                segment.end = segment.buffer.position();
+                if (!written.contains(segment)) written.add(segment);
+
+                operation.sequence = sequence;
+                nextSequence++;
+            }
+
+            for (Segment segment : written) {
+                segment.buffer.force();
+            }
+
+            // keep in heap while the window is not full, otherwise the worker reads them back from the journal
+            for (Operation operation : operations) {
+                if (loadedSequence == operation.sequence - 1 && pending.size() < maxInMemory) {
+                    pending.add(operation);
+                    loadedSequence = operation.sequence;
+                }
+            }
+            notEmpty.signalAll();
+
+            return operations.isEmpty() ? nextSequence - 1 : operations.get(operations.size() - 1).sequence;
+        } catch (IOException | JSONException e) {
+            throw new OpenbravoClientException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Segment createSegment(long firstSequence, int payloadLength) throws IOException {
+        final int size = Math.max(segmentSize, RECORD_HEADER + payloadLength + Integer.BYTES);
+        final Path path = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final Segment segment = new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Load segments and find the records after the checkpoint, they are read into pending by the worker.
+     * Reading a segment stops at the first empty or corrupted record, which is where the last append was
+     * interrupted; the next append overwrites it.
+     */
+    private void replay() throws IOException {
+        final List<Path> paths;
+        try (Stream<Path> stream = Files.list(directory)) {
+            paths = stream.filter(p -> {
+                        final String name = p.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        for (Path path : paths) {
+            final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            final Segment segment = new Segment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+            final ByteBuffer buffer = segment.buffer;
+
+            while (buffer.remaining() >= RECORD_HEADER) {
+                final int start = buffer.position();
+                final int length = buffer.getInt();
+                final long sequence = buffer.getLong();
+                final int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    buffer.position(start);
+                    break;
+                }
+
+                final byte[] payload = new byte[length];
+                buffer.get(payload);
+
+                final CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    logger.warning("replay : corrupted record at [" + path + "] position [" + start + "], ignoring rest of segment");
+                    buffer.position(start);
+                    break;
+                }
+
+                segment.lastSequence = sequence;
+                nextSequence = Math.max(nextSequence, sequence + 1);
+            }
+
+            segment.end = buffer.position();
+            segments.add(segment);
+        }
+
+        if (nextSequence - 1 > acknowledgedSequence) {
+            logger.info("replay : [" + (nextSequence - 1 - acknowledgedSequence) + "] pending operations from [" + directory + "]");
+        }
+
+        compact();
+    }
+
+    /**
+     * Read operations after the last loaded one from the journal into pending, up to the window size
+     */
+    private void refill() {
+        for (Segment segment : segments) {
+            if (pending.size() >= maxInMemory) return;
+            if (segment.lastSequence <= loadedSequence) continue;
+
+            final ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.limit(segment.end).position(segment.readPosition);
+            while (buffer.remaining() >= RECORD_HEADER && pending.size() < maxInMemory) {
+                final int length = buffer.getInt();
+                final long sequence = buffer.getLong();
+                buffer.getInt();
+
+                if (sequence <= loadedSequence) {
+                    buffer.position(buffer.position() + length);
+                    segment.readPosition = buffer.position();
+                    continue;
+                }
+
+                final byte[] payload = new byte[length];
+                buffer.get(payload);
+                segment.readPosition = buffer.position();
+                loadedSequence = sequence;
+
+                try {
+                    final Operation operation = Operation.fromJson(new JSONObject(new String(payload, StandardCharsets.UTF_8)));
+                    operation.sequence = sequence;
+                    pending.add(operation);
+                } catch (JSONException e) {
+                    logger.log(Level.SEVERE, "refill : unreadable record sequence [" + sequence + "], skipped", e);
+                }
+            }
+        }
+    }
+
+    private void flushLoop() {
+        long backoff = initialBackoffMillis;
+        while (running) {
+            List<Operation> batch = null;
+            try {
+                batch = takeBatch();
+                deliver(batch);
+                backoff = initialBackoffMillis;
+                continue;
+            } catch (InterruptedException e) {
+                break;
+            } catch (OpenbravoClientException e) {
+                logger.warning("flush : [" + batch.size() + "] operations failed [" + e.getMessage() + "], retrying in [" + backoff + "ms]");
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "flush : error writing checkpoint, retrying in [" + backoff + "ms]", e);
+            } catch (RuntimeException e) {
+                // e.g. connection pool shut down or a failing error handler, the worker must outlive it
+                logger.log(Level.SEVERE, "flush : unexpected error, retrying in [" + backoff + "ms]", e);
+            }
+
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException ie) {
+                break;
+            }
+            backoff = Math.min(maxBackoffMillis, backoff * 2);
+        }
+    }
+
+    /**
+     * @return first pending operation, followed by posts to the same entity up to batch size
+     */
+    private List<Operation> takeBatch() throws InterruptedException, IOException {
+        lock.lock();
+        try {
+            while (true) {
+                refill();
+                if (!pending.isEmpty()) break;
+
+                if (acknowledgedSequence < loadedSequence) {
+                    // only unreadable records were left
+                    acknowledge(loadedSequence);
+                }
+                notEmpty.await();
+            }
+
+            final List<Operation> batch = new ArrayList<>();
+            for (Operation operation : pending) {
+                if (batch.isEmpty()) {
+                    batch.add(operation);
+                    if (operation.type == Operation.Type.DELETE) break;
+                } else if (batch.size() < batchSize && operation.type == Operation.Type.POST && operation.tableEntity.equals(batch.get(0).tableEntity)) {
+                    batch.add(operation);
+                } else {
+                    break;
+                }
+            }
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Send the batch and acknowledge it. When Openbravo rejects the batch, nothing of it was created, rows
+     * are then sent one by one and each row is acknowledged as soon as it is settled, so a retry after a
+     * failure half way does not send a row already created again.
+     *
+     * @throws OpenbravoClientException when the request cannot have been applied, unacknowledged operations have to be retried
+     */
+    private void deliver(List<Operation> batch) throws OpenbravoClientException, IOException {
+        try {
+            send(batch);
+        } catch (OpenbravoClientException e) {
+            if (isRetryable(e)) throw e;
+
+            if (batch.size() == 1 || !isRejected(e)) {
+                // the batch may have been applied, sending it again row by row could create rows twice
+                for (Operation operation : batch) {
+                    errorHandler.accept(operation, isRejected(e) ? e : new OutcomeUnknownException(e));
+                }
+                acknowledge(batch.get(batch.size() - 1).sequence);
+                return;
+            }
+
+            // find out which rows were rejected
+            for (Operation operation : batch) {
+                try {
+                    send(Collections.singletonList(operation));
+                } catch (OpenbravoClientException rowException) {
+                    if (isRetryable(rowException)) throw rowException;
+                    errorHandler.accept(operation, isRejected(rowException) ? rowException : new OutcomeUnknownException(rowException));
+                }
+                acknowledge(operation.sequence);
+            }
+            return;
+        }
+
+        acknowledge(batch.get(batch.size() - 1).sequence);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void send(List<Operation> batch) throws OpenbravoClientException {
+        final Operation first = batch.get(0);
+        if (first.type == Operation.Type.DELETE) {
+            target.delete(first.tableEntity, first.recordId);
+        } else {
+            final Map<String, Object>[] rows = batch.stream()
+                    .map(o -> o.row)
+                    .toArray(Map[]::new);
+            target.post(first.tableEntity, rows);
+        }
+    }
+
+    /**
+     * The request did not reach Openbravo, or Openbravo failed before applying it, so it is safe to send
+     * again: connection failures and 5xx, except 502 and 504 which a proxy returns when it lost the server
+     * while the request may still be processed.
+     */
+    protected boolean isRetryable(@Nonnull OpenbravoClientException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RestClientException) {
+            final RestClientException restClientException = (RestClientException) cause;
+            final int statusCode = restClientException.getStatusCode();
+            return (restClientException.isServerError() && statusCode != 502 && statusCode != 504)
+                    || isNotSent(restClientException.getCause());
+        }
+        return isNotSent(cause);
+    }
+
+    /**
+     * Openbravo answered and did not apply the request: 4xx, invalid field values or an error status.
+     * Sending it again would fail the same way.
+     */
+    protected boolean isRejected(@Nonnull OpenbravoClientException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RestClientException) {
+            return ((RestClientException) cause).isClientError();
+        }
+        return cause instanceof OpenbravoCreateRecordException
+                || (cause instanceof OpenbravoGetResponseException && ((OpenbravoGetResponseException) cause).getStatus() == -1);
+    }
+
+    /**
+     * @return true if the connection failed before the request was sent
+     */
+    private static boolean isNotSent(@Nullable Throwable e) {
+        return e instanceof ConnectException
+                || e instanceof ConnectTimeoutException
+                || e instanceof UnknownHostException
+                || e instanceof NoRouteToHostException;
+    }
+
+    /**
+     * Acknowledge every operation up to sequence
+     */
+    private void acknowledge(long sequence) throws IOException {
+        lock.lock();
+        try {
+            while (!pending.isEmpty() && pending.peekFirst().sequence <= sequence) {
+                pending.pollFirst();
+            }
+
+            acknowledgedSequence = sequence;
+            checkpoint.putLong(0, sequence);
+            checkpoint.force();
+
+            compact();
+
+            if (acknowledgedSequence >= nextSequence - 1) {
+                drained.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Delete segments, except the one being appended, whose records are all acknowledged
+     */
+    private void compact() throws IOException {
+        while (segments.size() > 1 && segments.get(0).lastSequence <= acknowledgedSequence) {
+            final Segment segment = segments.remove(0);
+            segment.channel.close();
+            Files.deleteIfExists(segment.path);
+        }
+    }
+
+    /**
+     * Passed to the error handler when a request failed after it may have been applied by Openbravo, e.g.
+     * on a read timeout or an unreadable response. The operation is not sent again, whether it was applied
+     * has to be checked in Openbravo.
+     */
+    public static class OutcomeUnknownException extends OpenbravoClientException {
+        private final static long serialVersionUID = 1L;
+
+        OutcomeUnknownException(@Nonnull OpenbravoClientException cause) {
+            super("Outcome unknown, the operation may have been applied [" + cause.getMessage() + "]", cause);
+        }
+    }
+
+    /**
+     * Where queued operations are delivered, closed with the outbox
+     */
+    public interface Target extends Closeable {
+        void post(@Nonnull String tableEntity, @Nonnull Map<String, Object>[] rows) throws OpenbravoClientException;
+
+        void delete(@Nonnull String tableEntity, @Nonnull String recordId) throws OpenbravoClientException;
+
+        @Override
+        default void close() throws IOException {
+        }
+
+        /**
+         * Deliver through a dedicated {@link OpenbravoClient}, closed with the outbox
+         */
+        static Target of(@Nonnull String baseUrl, @Nonnull String username, @Nonnull String password) throws OpenbravoClientException {
+            return of(OpenbravoClient.builder().setBaseUrl(baseUrl).setCredentials(username, password).build(), true);
+        }
+
+        /**
+         * Deliver to the write node of the cluster through a dedicated {@link OpenbravoClient}, closed with the
+         * outbox; the cluster itself stays open
+         */
+        static Target of(@Nonnull OpenbravoCluster cluster, @Nonnull String username, @Nonnull String password) throws OpenbravoClientException {
+            return of(OpenbravoClient.builder().setCluster(cluster).setCredentials(username, password).build(), true);
+        }
+
+        /**
+         * Deliver through client, which stays open when the outbox is closed
+         */
+        static Target of(@Nonnull OpenbravoClient client) {
+            return of(client, false);
+        }
+
+        private static Target of(@Nonnull OpenbravoClient client, boolean closeClient) {
+            return new Target() {
+                @Override
+                public void post(@Nonnull String tableEntity, @Nonnull Map<String, Object>[] rows) throws OpenbravoClientException {
+                    client.postBatch(tableEntity, rows);
+                }
+
+                @Override
+                public void delete(@Nonnull String tableEntity, @Nonnull String recordId) throws OpenbravoClientException {
+                    client.delete(tableEntity, recordId);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (closeClient) {
+                        client.close();
+                    }
+                }
+            };
+        }
+    }
+
+    public static class Operation {
+        public enum Type {
+            POST,
+            DELETE
+        }
+
+        private final Type type;
+        private final String tableEntity;
+        @Nullable
+        private final Map<String, Object> row;
+        @Nullable
+        private final String recordId;
+        private long sequence;
+
+        private Operation(Type type, String tableEntity, @Nullable Map<String, Object> row, @Nullable String recordId) {
+            this.type = type;
+            this.tableEntity = tableEntity;
+            this.row = row;
+            this.recordId = recordId;
+        }
+
+        static Operation post(String tableEntity, Map<String, Object> row) {
+            return new Operation(Type.POST, tableEntity, row, null);
+        }
+
+        static Operation delete(String tableEntity, String recordId) {
+            return new Operation(Type.DELETE, tableEntity, null, recordId);
+        }
+
+        static Operation fromJson(JSONObject json) throws JSONException {
+            final Type type = Type.valueOf(json.getString("type"));
+            final String tableEntity = json.getString("entity");
+            if (type == Type.DELETE) {
+                return delete(tableEntity, json.getString("id"));
+            } else {
+                return post(tableEntity, json.getJSONObject("data").toMap());
+            }
+        }
+
+        JSONObject toJson() throws JSONException {
+            final JSONObject json = new JSONObject();
+            json.put("type", type.name());
+            json.put("entity", tableEntity);
+            if (type == Type.DELETE) {
+                json.put("id", recordId);
+            } else {
+                // keep null values, JSONObject(Map) would drop them
+                final JSONObject data = new JSONObject();
+                row.forEach((key, value) -> data.put(key, value == null ? JSONObject.NULL : value));
+                json.put("data", data);
+            }
+            return json;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getTableEntity() {
+            return tableEntity;
+        }
+
+        @Nullable
+        public Map<String, Object> getRow() {
+            return row;
+        }
+
+        @Nullable
+        public String getRecordId() {
+            return recordId;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        @Override
+        public String toString() {
+            return "operation [" + type + "] entity [" + tableEntity + "] sequence [" + sequence + "]";
+        }
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private long lastSequence = 0;
+
+        /**
+         * End of valid records
+         */
+        private int end = 0;
+
+        /**
+         * Position of the next record to read into pending
+         */
+        private int readPosition = 0;
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    public static class Builder {
+        private final Path directory;
+        private final Target target;
+        private int segmentSize = 16 * 1024 * 1024;
+        private int batchSize = 100;
+        private int maxInMemory = 10_000;
+        private Duration initialBackoff = Duration.ofSeconds(1);
+        private Duration maxBackoff = Duration.ofMinutes(1);
+        private BiConsumer<Operation, OpenbravoClientException> errorHandler = (operation, e) ->
+                logger.log(Level.SEVERE, "Not delivered " + operation + " [" + e.getMessage() + "]", e);
+
+        private Builder(Path directory, Target target) {
+            this.directory = directory;
+            this.target = target;
+        }
+
+        public Builder setSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Maximum number of rows posted in one request
+         */
+        public Builder setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Maximum number of pending operations kept in heap, further ones are read back from the journal
+         */
+        public Builder setMaxInMemory(int maxInMemory) {
+            this.maxInMemory = maxInMemory;
+            return this;
+        }
+
+        public Builder setBackoff(@Nonnull Duration initialBackoff, @Nonnull Duration maxBackoff) {
+            this.initialBackoff = initialBackoff;
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * Called for operations rejected by Openbravo, or whose outcome is unknown as an
+         * {@link OutcomeUnknownException}; they are not sent again
+         */
+        public Builder setErrorHandler(@Nonnull BiConsumer<Operation, OpenbravoClientException> errorHandler) {
+            this.errorHandler = errorHandler;
+            return this;
+        }
+
+        /**
+         * Open the journal, replay pending operations and start flushing
+         */
+        public WriteBehindOutbox open() throws IOException {
+            return new WriteBehindOutbox(this);
+        }
+    }
+}
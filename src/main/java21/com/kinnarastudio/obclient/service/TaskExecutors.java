@@ -0,0 +1,31 @@
+package com.kinnarastudio.obclient.service;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executors for blocking Openbravo calls run in parallel.
+ * <p>
+ * This is the JDK 21 implementation of the multi-release jar, every task runs on its own virtual thread.
+ * Callers bound concurrency themselves, the executor does not limit the number of threads.
+ */
+final class TaskExecutors {
+    private TaskExecutors() {
+    }
+
+    /**
+     * @param name prefix of the name of the threads
+     * @return executor starting a virtual thread per task
+     */
+    static ExecutorService newTaskExecutor(@Nonnull String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+
+    /**
+     * @return true if tasks run on virtual threads
+     */
+    static boolean isVirtual() {
+        return true;
+    }
+}
@@ -0,0 +1,291 @@
+package com.kinnarastudio.obclient.service;
+
+import com.kinnarastudio.obclient.exceptions.OpenbravoClientException;
+import com.kinnarastudio.obclient.exceptions.OpenbravoCreateRecordException;
+import com.kinnarastudio.obclient.exceptions.RestClientException;
+import org.json.JSONException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindOutboxTest {
+    private final static Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplayAfterTornWrite() throws Exception {
+        final Path directory = folder.newFolder().toPath();
+        try (WriteBehindOutbox outbox = open(directory, new RecordingTarget(ids -> true)).open()) {
+            outbox.post("Product", row(1));
+            outbox.post("Product", row(2));
+            outbox.post("Product", row(3));
+        }
+
+        // the last append was interrupted half way through its payload
+        final Path segment = segments(directory).get(0);
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int last = 0;
+        while (buffer.remaining() >= 16 && buffer.getInt(buffer.position()) > 0) {
+            last = buffer.position();
+            buffer.position(buffer.position() + 16 + buffer.getInt(buffer.position()));
+        }
+        final int length = buffer.getInt(last);
+        Arrays.fill(buffer.array(), last + 16 + length / 2, last + 16 + length, (byte) 0);
+        Files.write(segment, buffer.array());
+
+        // kept unavailable until the replayed operations are counted, the worker would deliver them first
+        final AtomicBoolean down = new AtomicBoolean(true);
+        final RecordingTarget target = new RecordingTarget(ids -> down.get());
+        try (WriteBehindOutbox outbox = open(directory, target).open()) {
+            assertEquals(2, outbox.getPendingCount());
+
+            down.set(false);
+            assertTrue(outbox.awaitFlushed(TIMEOUT));
+
+            outbox.post("Product", row(4));
+            assertTrue(outbox.awaitFlushed(TIMEOUT));
+        }
+        assertEquals(Arrays.asList(1, 2, 4), target.ids);
+
+        // the torn record was overwritten, nothing left to replay
+        final RecordingTarget reopened = new RecordingTarget(ids -> false);
+        try (WriteBehindOutbox outbox = open(directory, reopened).open()) {
+            assertEquals(0, outbox.getPendingCount());
+        }
+        assertEquals(Collections.emptyList(), reopened.ids);
+    }
+
+    @Test
+    public void testReplayAfterCompaction() throws Exception {
+        final Path directory = folder.newFolder().toPath();
+        final RecordingTarget target = new RecordingTarget(ids -> false);
+        try (WriteBehindOutbox outbox = open(directory, target).setSegmentSize(256).open()) {
+            for (int i = 1; i <= 20; i++) {
+                outbox.post("Product", row(i));
+            }
+            assertTrue(outbox.awaitFlushed(TIMEOUT));
+            assertEquals(1, segments(directory).size());
+        }
+        assertEquals(range(1, 20), target.ids);
+
+        final RecordingTarget reopened = new RecordingTarget(ids -> false);
+        try (WriteBehindOutbox outbox = open(directory, reopened).setSegmentSize(256).open()) {
+            assertEquals(0, outbox.getPendingCount());
+
+            outbox.post("Product", row(21));
+            assertTrue(outbox.awaitFlushed(TIMEOUT));
+        }
+        assertEquals(Collections.singletonList(21), reopened.ids);
+    }
+
+    @Test
+    public void testReplayBeyondInMemoryWindow() throws Exception {
+        final Path directory = folder.newFolder().toPath();
+        try (WriteBehindOutbox outbox = open(directory, new RecordingTarget(ids -> true)).setSegmentSize(512).setMaxInMemory(3).open()) {
+            for (int i = 1; i <= 30; i++) {
+                outbox.post("Product", row(i));
+            }
+            assertEquals(30, outbox.getPendingCount());
+        }
+
+        final RecordingTarget target = new RecordingTarget(ids -> false);
+        try (WriteBehindOutbox outbox = open(directory, target).setSegmentSize(512).setMaxInMemory(3).setBatchSize(2).open()) {
+            outbox.post("Product", row(31));
+            assertTrue(outbox.awaitFlushed(TIMEOUT));
+        }
+        assertEquals(range(1, 31), target.ids);
+    }
+
+    @Test
+    public void testRejectedBatchNeverResendsCreatedRows() throws Exception {
+        final Path directory = folder.newFolder().toPath();
+        final List<Integer> failedOnce = new ArrayList<>();
+        final RecordingTarget target = new RecordingTarget(ids -> {
+            if (ids.size() > 1) {
+                throw new OpenbravoClientException(new OpenbravoCreateRecordException(Collections.singletonMap("name", "required")));
+            }
+            if (ids.get(0) == 4 && failedOnce.isEmpty()) {
+                failedOnce.add(4);
+                return true;
+            }
+            return false;
+        });
+
+        try (WriteBehindOutbox outbox = open(directory, target).open()) {
+            outbox.post("Product", rows(1, 5));
+            assertTrue(outbox.awaitFlushed(TIMEOUT));
+        }
+        assertEquals(range(1, 5), target.ids);
+    }
+
+    @Test
+    public void testClientErrorGoesToErrorHandler() throws Exception {
+        final Path directory = folder.newFolder().toPath();
+        final List<WriteBehindOutbox.Operation> rejected = Collections.synchronizedList(new ArrayList<>());
+        final RecordingTarget target = new RecordingTarget(ids -> false) {
+            @Override
+            public void delete(@Nonnull String tableEntity, @Nonnull String recordId) throws OpenbravoClientException {
+                throw new OpenbravoClientException(new RestClientException("Response code [404] is not 200", 404));
+            }
+        };
+
+        try (WriteBehindOutbox outbox = open(directory, target).setErrorHandler((operation, e) -> rejected.add(operation)).open()) {
+            outbox.delete("Product", "1");
+            outbox.post("Product", row(2));
+            assertTrue(outbox.awaitFlushed(TIMEOUT));
+        }
+        assertEquals(1, rejected.size());
+        assertEquals(WriteBehindOutbox.Operation.Type.DELETE, rejected.get(0).getType());
+        assertEquals(Collections.singletonList(2), target.ids);
+    }
+
+    @Test
+    public void testWorkerSurvivesRuntimeException() throws Exception {
+        final Path directory = folder.newFolder().toPath();
+        final List<Integer> thrown = new ArrayList<>();
+        final RecordingTarget target = new RecordingTarget(ids -> {
+            if (thrown.isEmpty()) {
+                thrown.add(1);
+                throw new IllegalStateException("Connection pool shut down");
+            }
+            return false;
+        });
+
+        try (WriteBehindOutbox outbox = open(directory, target).open()) {
+            outbox.post("Product", row(1));
+            assertTrue(outbox.awaitFlushed(TIMEOUT));
+        }
+        assertEquals(Collections.singletonList(1), target.ids);
+    }
+
+    @Test
+    public void testReadTimeoutIsNotResent() throws Exception {
+        final Path directory = folder.newFolder().toPath();
+        final List<OpenbravoClientException> errors = Collections.synchronizedList(new ArrayList<>());
+        final RecordingTarget target = new RecordingTarget(ids -> false) {
+            @Override
+            public void post(@Nonnull String tableEntity, @Nonnull Map<String, Object>[] rows) throws OpenbravoClientException {
+                // created, then the response is lost
+                super.post(tableEntity, rows);
+                throw new OpenbravoClientException(new RestClientException(new SocketTimeoutException("Read timed out")));
+            }
+        };
+
+        try (WriteBehindOutbox outbox = open(directory, target).setErrorHandler((operation, e) -> errors.add(e)).open()) {
+            outbox.post("Product", rows(1, 3));
+            assertTrue(outbox.awaitFlushed(TIMEOUT));
+        }
+        assertEquals(range(1, 3), target.ids);
+        assertEquals(3, errors.size());
+        assertTrue(errors.stream().allMatch(e -> e instanceof WriteBehindOutbox.OutcomeUnknownException));
+    }
+
+    @Test
+    public void testUnreadableResponseIsNotResentRowByRow() throws Exception {
+        final Path directory = folder.newFolder().toPath();
+        final List<OpenbravoClientException> errors = Collections.synchronizedList(new ArrayList<>());
+        final RecordingTarget target = new RecordingTarget(ids -> false) {
+            @Override
+            public void post(@Nonnull String tableEntity, @Nonnull Map<String, Object>[] rows) throws OpenbravoClientException {
+                super.post(tableEntity, rows);
+                throw new OpenbravoClientException(new JSONException("A JSONObject text must begin with '{'"));
+            }
+        };
+
+        try (WriteBehindOutbox outbox = open(directory, target).setErrorHandler((operation, e) -> errors.add(e)).open()) {
+            outbox.post("Product", rows(1, 3));
+            assertTrue(outbox.awaitFlushed(TIMEOUT));
+        }
+        assertEquals(range(1, 3), target.ids);
+        assertEquals(3, errors.size());
+        assertTrue(errors.stream().allMatch(e -> e instanceof WriteBehindOutbox.OutcomeUnknownException));
+    }
+
+    private WriteBehindOutbox.Builder open(Path directory, WriteBehindOutbox.Target target) {
+        return WriteBehindOutbox.builder(directory, target)
+                .setBackoff(Duration.ofMillis(5), Duration.ofMillis(20));
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(p -> p.getFileName().toString().startsWith("segment-"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static Map<String, Object> row(int id) {
+        return Collections.singletonMap("id", id);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object>[] rows(int from, int to) {
+        return IntStream.rangeClosed(from, to)
+                .mapToObj(WriteBehindOutboxTest::row)
+                .toArray(Map[]::new);
+    }
+
+    private static List<Integer> range(int from, int to) {
+        return IntStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+    }
+
+    /**
+     * Records ids of created rows, unavailable while the predicate on the ids of a request returns true
+     */
+    private static class RecordingTarget implements WriteBehindOutbox.Target {
+        private final List<Integer> ids = Collections.synchronizedList(new ArrayList<>());
+        private final Unavailable unavailable;
+
+        RecordingTarget(Unavailable unavailable) {
+            this.unavailable = unavailable;
+        }
+
+        @Override
+        public void post(@Nonnull String tableEntity, @Nonnull Map<String, Object>[] rows) throws OpenbravoClientException {
+            final List<Integer> requested = Stream.of(rows)
+                    .map(row -> ((Number) row.get("id")).intValue())
+                    .collect(Collectors.toList());
+            if (unavailable.test(requested)) {
+                throw connectionRefused();
+            }
+            ids.addAll(requested);
+        }
+
+        @Override
+        public void delete(@Nonnull String tableEntity, @Nonnull String recordId) throws OpenbravoClientException {
+            throw connectionRefused();
+        }
+    }
+
+    private static OpenbravoClientException connectionRefused() {
+        return new OpenbravoClientException(new RestClientException(new ConnectException("Connection refused")));
+    }
+
+    private interface Unavailable {
+        boolean test(List<Integer> ids) throws OpenbravoClientException;
+    }
+}